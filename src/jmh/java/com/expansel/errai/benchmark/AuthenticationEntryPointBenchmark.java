@@ -0,0 +1,60 @@
+package com.expansel.errai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.AuthenticationException;
+
+import com.expansel.errai.springsecurity.server.ErraiClientBusAuthenticationEntryPoint;
+import com.expansel.errai.springsecurity.server.ErraiRestClientAuthenticationEntryPoint;
+
+/**
+ * Writing the Errai security error responses of the authentication entry points.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationEntryPointBenchmark {
+    private ErraiClientBusAuthenticationEntryPoint clientBusEntryPoint;
+    private ErraiRestClientAuthenticationEntryPoint restClientEntryPoint;
+    private HttpServletResponse response;
+    private AuthenticationException authException;
+
+    @Setup
+    public void setup() {
+        // the marshallers are normally initialized by the bus
+        MappingContextSingleton.get();
+        clientBusEntryPoint = new ErraiClientBusAuthenticationEntryPoint();
+        restClientEntryPoint = new ErraiRestClientAuthenticationEntryPoint();
+        response = BenchmarkSupport.discardingResponse();
+        authException = new InsufficientAuthenticationException("Full authentication is required to access this resource");
+    }
+
+    @Benchmark
+    public void clientBus() throws Exception {
+        clientBusEntryPoint.commence(null, response, authException);
+    }
+
+    @Benchmark
+    public void restClient() throws Exception {
+        restClientEntryPoint.commence(null, response, authException);
+    }
+}
@@ -0,0 +1,64 @@
+package com.expansel.errai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.security.shared.api.identity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.expansel.errai.springsecurity.server.SpringSecurityAuthenticationService;
+
+/**
+ * {@link SpringSecurityAuthenticationService#getUser()} with and without the user cache, run 
+ * with <code>-prof gc</code> to see the allocation per call.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationServiceBenchmark {
+    @Param({ "true", "false" })
+    private boolean userCacheEnabled;
+
+    private SpringSecurityAuthenticationService authenticationService;
+
+    @Setup
+    public void setup() {
+        authenticationService = new SpringSecurityAuthenticationService(null, null);
+        authenticationService.setUserCacheEnabled(userCacheEnabled);
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("user", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN", "ROLE_REPORTS")));
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public User getUser() {
+        return authenticationService.getUser();
+    }
+
+    @Benchmark
+    public boolean isLoggedIn() {
+        return authenticationService.isLoggedIn();
+    }
+}
@@ -0,0 +1,126 @@
+package com.expansel.errai.benchmark;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.common.client.protocols.MessageParts;
+
+/**
+ * Stubs shared by the benchmarks. Interfaces are stubbed with dynamic proxies as the 
+ * benchmarks only need a handful of their methods.
+ *
+ * @author Zach Visagie
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * @return a bus that discards everything sent to it
+     */
+    public static MessageBus noOpBus() {
+        return stub(MessageBus.class);
+    }
+
+    public static Message rpcMessage(String subject, String callSignature, Object... args) {
+        List<Object> parms = Arrays.asList(args);
+        return CommandMessage.create().toSubject(subject).command(callSignature)
+                .set("MethodParms", parms).set(MessageParts.ReplyTo, "benchmark.reply");
+    }
+
+    /**
+     * @return a response whose writer and output stream discard everything
+     */
+    public static HttpServletResponse discardingResponse() {
+        final PrintWriter writer = new PrintWriter(new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        final ServletOutputStream outputStream = new ServletOutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+        return stub(HttpServletResponse.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getWriter")) {
+                    return writer;
+                } else if (method.getName().equals("getOutputStream")) {
+                    return outputStream;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static <T> T stub(Class<T> type) {
+        return stub(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BenchmarkSupport.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        }
+        return 0d;
+    }
+}
@@ -0,0 +1,60 @@
+package com.expansel.errai.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.expansel.errai.springsecurity.server.LoginThrottle;
+
+/**
+ * {@link LoginThrottle} with an address limit under contention: all threads hammering one 
+ * username and address, as in a credential stuffing burst against one account, and spread 
+ * over many usernames.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class LoginThrottleBenchmark {
+    private static final int USERNAMES = 100000;
+
+    private LoginThrottle throttle;
+    private String[] usernames;
+
+    @Setup
+    public void setup() {
+        throttle = new LoginThrottle(4096);
+        throttle.setAddressLimit(50, 5);
+        usernames = new String[USERNAMES];
+        for (int i = 0; i < USERNAMES; i++) {
+            usernames[i] = "user" + i;
+        }
+    }
+
+    @Benchmark
+    public boolean sameUsername() {
+        return throttle.tryAcquire("admin", "10.0.0.1");
+    }
+
+    @Benchmark
+    public boolean manyUsernames() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return throttle.tryAcquire(usernames[random.nextInt(USERNAMES)], "10.0.0." + random.nextInt(256));
+    }
+}
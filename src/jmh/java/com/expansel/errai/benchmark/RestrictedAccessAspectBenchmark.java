@@ -0,0 +1,116 @@
+package com.expansel.errai.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.jboss.errai.security.shared.api.RequiredRolesProvider;
+import org.jboss.errai.security.shared.api.RoleImpl;
+import org.jboss.errai.security.shared.api.annotation.RestrictedAccess;
+import org.jboss.errai.security.shared.api.identity.User;
+import org.jboss.errai.security.shared.api.identity.UserImpl;
+import org.jboss.errai.security.shared.roles.SharedRequiredRolesExtractorImpl;
+import org.jboss.errai.security.shared.service.AuthenticationService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.expansel.errai.erraisecurity.server.RestrictedAccessAspect;
+
+/**
+ * Overhead of {@link RestrictedAccessAspect#restrictAccess(ProceedingJoinPoint)} for an
+ * authorized call, compared to proceeding directly.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RestrictedAccessAspectBenchmark {
+
+    public static class SecuredService {
+        @RestrictedAccess(roles = "admin")
+        public String secured(String value) {
+            return value;
+        }
+    }
+
+    private RestrictedAccessAspect aspect;
+    private ProceedingJoinPoint joinPoint;
+
+    @Setup
+    public void setup() throws Exception {
+        final User user = new UserImpl("admin", Arrays.asList(new RoleImpl("admin"), new RoleImpl("user")));
+        AuthenticationService authenticationService = BenchmarkSupport.stub(AuthenticationService.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getUser")) {
+                    return user;
+                } else if (method.getName().equals("isLoggedIn")) {
+                    return true;
+                }
+                return null;
+            }
+        });
+        aspect = new RestrictedAccessAspect(authenticationService, new SharedRequiredRolesExtractorImpl() {
+            @Override
+            protected RequiredRolesProvider getProviderInstance(Class<? extends RequiredRolesProvider> providerType) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            protected void destroyProviderInstance(RequiredRolesProvider instance) {
+            }
+        });
+
+        final SecuredService target = new SecuredService();
+        final Method method = SecuredService.class.getMethod("secured", String.class);
+        final Object[] args = new Object[] { "value" };
+        final MethodSignature signature = BenchmarkSupport.stub(MethodSignature.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] a) throws Throwable {
+                return m.getName().equals("getMethod") ? method : null;
+            }
+        });
+        joinPoint = BenchmarkSupport.stub(ProceedingJoinPoint.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method m, Object[] a) throws Throwable {
+                String name = m.getName();
+                if (name.equals("getTarget") || name.equals("getThis")) {
+                    return target;
+                } else if (name.equals("getSignature")) {
+                    return signature;
+                } else if (name.equals("getArgs")) {
+                    return args.clone();
+                } else if (name.equals("proceed")) {
+                    Object[] callArgs = a == null || a.length == 0 ? args : (Object[]) a[0];
+                    return method.invoke(target, callArgs);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Benchmark
+    public Object restrictAccess() throws Throwable {
+        return aspect.restrictAccess(joinPoint);
+    }
+
+    @Benchmark
+    public Object proceedDirectly() throws Throwable {
+        return joinPoint.proceed();
+    }
+}
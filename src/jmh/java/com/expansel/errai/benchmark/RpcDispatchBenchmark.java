@@ -0,0 +1,123 @@
+package com.expansel.errai.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.io.RemoteServiceCallback;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.jboss.errai.codegen.util.ProxyUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.expansel.errai.spring.server.ErraiRpcEndpointFactory;
+import com.expansel.errai.spring.server.MessageCallbackWrapper;
+import com.expansel.errai.spring.server.MethodHandleRpcEndpointFactory;
+import com.expansel.errai.spring.server.NoWrapMessageCallbackWrapper;
+import com.expansel.errai.spring.server.RpcEndpointFactory;
+import com.expansel.errai.springsecurity.server.SpringSecurityMessageCallbackWrapper;
+
+/**
+ * RPC dispatch through a {@link RemoteServiceCallback} with endpoints built and wrapped the 
+ * way the ErraiApplicationListener does, including the reply sent to a no-op bus.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcDispatchBenchmark {
+
+    public interface EchoService {
+        String echo(String value);
+
+        int add(int a, int b);
+
+        void ping();
+    }
+
+    public static class EchoServiceImpl implements EchoService {
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+
+        @Override
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public void ping() {
+        }
+    }
+
+    @Param({ "errai", "methodHandle" })
+    public String endpointFactory;
+
+    @Param({ "none", "springSecurity" })
+    public String wrapper;
+
+    private RemoteServiceCallback remoteServiceCallback;
+    private Message echoMessage;
+    private Message addMessage;
+    private Message pingMessage;
+
+    @Setup
+    public void setup() {
+        RpcEndpointFactory factory = endpointFactory.equals("errai") ? new ErraiRpcEndpointFactory()
+                : new MethodHandleRpcEndpointFactory();
+        MessageCallbackWrapper callbackWrapper = wrapper.equals("none") ? new NoWrapMessageCallbackWrapper()
+                : new SpringSecurityMessageCallbackWrapper();
+        final EchoService service = new EchoServiceImpl();
+        ServiceInstanceProvider provider = new ServiceInstanceProvider() {
+            @Override
+            public Object get(Message message) {
+                return service;
+            }
+        };
+        MessageBus bus = BenchmarkSupport.noOpBus();
+        String subject = EchoService.class.getName() + ":RPC";
+        Map<String, MessageCallback> endpoints = new HashMap<String, MessageCallback>();
+        for (Method method : EchoService.class.getMethods()) {
+            String callSignature = ProxyUtil.createCallSignature(EchoService.class, method);
+            MessageCallback endpoint = factory.createEndpoint(provider, method, bus);
+            endpoints.put(callSignature, callbackWrapper.wrap(endpoint, subject, callSignature));
+        }
+        remoteServiceCallback = new RemoteServiceCallback(endpoints);
+        echoMessage = BenchmarkSupport.rpcMessage(subject, "echo:java.lang.String:", "hello");
+        addMessage = BenchmarkSupport.rpcMessage(subject, "add:int:int:", 1, 2);
+        pingMessage = BenchmarkSupport.rpcMessage(subject, "ping:");
+    }
+
+    @Benchmark
+    public void valueReply() {
+        remoteServiceCallback.callback(echoMessage);
+    }
+
+    @Benchmark
+    public void primitiveArguments() {
+        remoteServiceCallback.callback(addMessage);
+    }
+
+    @Benchmark
+    public void voidReply() {
+        remoteServiceCallback.callback(pingMessage);
+    }
+}
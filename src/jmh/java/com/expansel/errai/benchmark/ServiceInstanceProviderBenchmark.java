@@ -0,0 +1,83 @@
+package com.expansel.errai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import com.expansel.errai.spring.server.ScopeAwareServiceInstanceProviderFactory;
+
+/**
+ * Bean resolution for RPC calls: the lookup with logging the listener used to do on every 
+ * call compared to the providers created by {@link ScopeAwareServiceInstanceProviderFactory}.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceInstanceProviderBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceInstanceProviderBenchmark.class);
+
+    public static class Service {
+    }
+
+    private GenericApplicationContext applicationContext;
+    private ServiceInstanceProvider singletonProvider;
+    private ServiceInstanceProvider prototypeProvider;
+
+    @Setup
+    public void setup() {
+        applicationContext = new GenericApplicationContext();
+        applicationContext.registerBeanDefinition("singletonService", new RootBeanDefinition(Service.class));
+        RootBeanDefinition prototype = new RootBeanDefinition(Service.class);
+        prototype.setScope(ConfigurableBeanFactory.SCOPE_PROTOTYPE);
+        applicationContext.registerBeanDefinition("prototypeService", prototype);
+        applicationContext.refresh();
+
+        ScopeAwareServiceInstanceProviderFactory factory = new ScopeAwareServiceInstanceProviderFactory();
+        singletonProvider = factory.createProvider(applicationContext, "singletonService");
+        prototypeProvider = factory.createProvider(applicationContext, "prototypeService");
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public Object lookupWithLogging() {
+        Object obj = applicationContext.getBean("singletonService");
+        logger.info("obj instance: " + obj.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(obj)));
+        return obj;
+    }
+
+    @Benchmark
+    public Object singleton() {
+        return singletonProvider.get((Message) null);
+    }
+
+    @Benchmark
+    public Object prototype() {
+        return prototypeProvider.get((Message) null);
+    }
+}
@@ -0,0 +1,77 @@
+package com.expansel.errai.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.base.MessageDeliveryFailure;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.access.AccessDeniedException;
+
+import com.expansel.errai.springsecurity.server.SecurityExceptionMappingRegistry;
+import com.expansel.errai.springsecurity.server.SpringSecurityMessageCallback;
+
+/**
+ * {@link SpringSecurityMessageCallback} on the success path and when the service fails with
+ * an access denied exception wrapped the way RPC endpoints report it, with new or 
+ * preallocated Errai exceptions.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpringSecurityMessageCallbackBenchmark {
+    @Param({ "false", "true" })
+    private boolean preallocated;
+
+    private MessageCallback success;
+    private MessageCallback accessDenied;
+    private Message message;
+
+    @Setup
+    public void setup() {
+        SecurityExceptionMappingRegistry registry = new SecurityExceptionMappingRegistry();
+        registry.setPreallocatedExceptions(preallocated);
+        success = new SpringSecurityMessageCallback(new MessageCallback() {
+            @Override
+            public void callback(Message message) {
+            }
+        }, registry);
+        accessDenied = new SpringSecurityMessageCallback(new MessageCallback() {
+            @Override
+            public void callback(Message message) {
+                throw new MessageDeliveryFailure("error invoking RPC endpoint", new AccessDeniedException("Access is denied"), true);
+            }
+        }, registry);
+        message = BenchmarkSupport.rpcMessage("Service:RPC", "call:");
+    }
+
+    @Benchmark
+    public void successPath() {
+        success.callback(message);
+    }
+
+    @Benchmark
+    public Object accessDeniedPath() {
+        try {
+            accessDenied.callback(message);
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+}
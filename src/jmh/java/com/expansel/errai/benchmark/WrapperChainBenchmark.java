@@ -0,0 +1,65 @@
+package com.expansel.errai.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.expansel.errai.spring.server.MessageCallbackWrapperChain;
+import com.expansel.errai.spring.server.metrics.DefaultServiceMetricsRegistry;
+import com.expansel.errai.spring.server.metrics.MetricsMessageCallbackWrapper;
+import com.expansel.errai.springsecurity.server.SpringSecurityMessageCallbackWrapper;
+
+/**
+ * Security and metrics wrappers nested by hand compared to the same wrappers fused by a 
+ * {@link MessageCallbackWrapperChain}.
+ *
+ * @author Zach Visagie
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperChainBenchmark {
+    private MessageCallback nested;
+    private MessageCallback fused;
+    private Message message;
+
+    @Setup
+    public void setup() {
+        MessageCallback callback = new MessageCallback() {
+            @Override
+            public void callback(Message message) {
+            }
+        };
+        nested = new MetricsMessageCallbackWrapper(new DefaultServiceMetricsRegistry(null),
+                new SpringSecurityMessageCallbackWrapper()).wrap(callback, "Service:RPC", "call:");
+        fused = new MessageCallbackWrapperChain(Arrays.asList(
+                new MetricsMessageCallbackWrapper(new DefaultServiceMetricsRegistry(null)),
+                new SpringSecurityMessageCallbackWrapper())).wrap(callback, "Service:RPC", "call:");
+        message = BenchmarkSupport.rpcMessage("Service:RPC", "call:");
+    }
+
+    @Benchmark
+    public void nested() {
+        nested.callback(message);
+    }
+
+    @Benchmark
+    public void fused() {
+        fused.callback(message);
+    }
+}
@@ -1,8 +1,16 @@
 package com.expansel.errai.erraisecurity.server;
 
+import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.interceptor.InvocationContext;
 
@@ -11,13 +19,23 @@ import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.jboss.errai.security.server.ServerSecurityRoleInterceptor;
+import org.jboss.errai.security.shared.api.Role;
+import org.jboss.errai.security.shared.api.annotation.RestrictedAccess;
+import org.jboss.errai.security.shared.api.identity.User;
+import org.jboss.errai.security.shared.exception.UnauthenticatedException;
+import org.jboss.errai.security.shared.exception.UnauthorizedException;
 import org.jboss.errai.security.shared.service.AuthenticationService;
 import org.jboss.errai.security.shared.spi.RequiredRolesExtractor;
 import org.springframework.stereotype.Component;
 
 /**
- * This aspectj aspect is used to handle the Errai @RestrictedAccess annotation. It defers handling to the  
- * ServerSecurityRoleInterceptor to ensure handling happens the same way.
+ * <p>This aspectj aspect is used to handle the Errai @RestrictedAccess annotation. It makes the 
+ * same decisions as the {@link ServerSecurityRoleInterceptor}, finding the annotations on the method, 
+ * its class and the matching methods of the interfaces of the target class.</p>
+ * 
+ * <p>The annotations are resolved once per target class and method into an {@link AuthorizationPlan}
+ * holding the roles of the annotations and the annotations with {@link RestrictedAccess#providers()}, 
+ * whose roles are still obtained from the {@link RequiredRolesExtractor} on every call.</p>
  * 
  * @author Zach Visagie
  */
@@ -26,6 +44,8 @@ import org.springframework.stereotype.Component;
 public class RestrictedAccessAspect {
     private AuthenticationService authenticationService;
     private RequiredRolesExtractor roleExtractor;
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, AuthorizationPlan>> plans = new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, AuthorizationPlan>>();
+    private final ConcurrentHashMap<Set<Role>, Set<Role>> internedRoles = new ConcurrentHashMap<Set<Role>, Set<Role>>();
 
     public RestrictedAccessAspect(AuthenticationService authenticationService, RequiredRolesExtractor roleExtractor) {
         super();
@@ -36,10 +56,152 @@ public class RestrictedAccessAspect {
 
     @Around("@annotation(org.jboss.errai.security.shared.api.annotation.RestrictedAccess)")
     public Object restrictAccess(ProceedingJoinPoint joinPoint) throws Throwable {
-        ServerSecurityRoleInterceptor interceptor = new ServerSecurityRoleInterceptor(authenticationService, roleExtractor);
-        return interceptor.aroundInvoke(new ProxyInvocationContext(joinPoint));
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        AuthorizationPlan plan = getAuthorizationPlan(joinPoint.getTarget().getClass(), method);
+        plan.authorize(authenticationService.getUser(), roleExtractor);
+        try {
+            return joinPoint.proceed();
+        } catch (Exception e) {
+            throw e;
+        } catch (Throwable t) {
+            // same as proceeding through the interceptor's InvocationContext
+            throw new Exception(t);
+        }
+    }
+
+    /**
+     * @param targetClass
+     * @param method
+     * @return the plan for calls to the method on instances of the target class
+     * @throws IllegalArgumentException when there are no @RestrictedAccess annotations
+     */
+    public AuthorizationPlan getAuthorizationPlan(Class<?> targetClass, Method method) {
+        ConcurrentHashMap<Method, AuthorizationPlan> classPlans = plans.get(targetClass);
+        if (classPlans == null) {
+            classPlans = new ConcurrentHashMap<Method, AuthorizationPlan>();
+            ConcurrentHashMap<Method, AuthorizationPlan> existing = plans.putIfAbsent(targetClass, classPlans);
+            if (existing != null) {
+                classPlans = existing;
+            }
+        }
+        AuthorizationPlan plan = classPlans.get(method);
+        if (plan == null) {
+            plan = createAuthorizationPlan(targetClass, method);
+            classPlans.put(method, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Clears the plans, e.g. after changing what the {@link RequiredRolesExtractor} returns for 
+     * the roles of an annotation.
+     */
+    public void clearAuthorizationPlans() {
+        plans.clear();
+    }
+
+    private AuthorizationPlan createAuthorizationPlan(Class<?> targetClass, Method method) {
+        List<RestrictedAccess> annotations = getRestrictedAccessAnnotations(targetClass, method);
+        Set<Role> roles = new HashSet<Role>();
+        List<RestrictedAccess> providerAnnotations = new ArrayList<RestrictedAccess>();
+        for (RestrictedAccess annotation : annotations) {
+            roles.addAll(roleExtractor.extractSimpleRoles(annotation));
+            if (annotation.providers().length > 0) {
+                providerAnnotations.add(annotation);
+            }
+        }
+        return new AuthorizationPlan(intern(roles),
+                providerAnnotations.toArray(new RestrictedAccess[providerAnnotations.size()]));
+    }
+
+    private Set<Role> intern(Set<Role> roles) {
+        Set<Role> interned = internedRoles.get(roles);
+        if (interned == null) {
+            interned = Collections.unmodifiableSet(roles);
+            Set<Role> existing = internedRoles.putIfAbsent(roles, interned);
+            if (existing != null) {
+                interned = existing;
+            }
+        }
+        return interned;
+    }
+
+    // the annotation lookup follows ServerSecurityRoleInterceptor
+    private List<RestrictedAccess> getRestrictedAccessAnnotations(Class<?> targetClass, Method method) {
+        List<RestrictedAccess> annotations = new ArrayList<RestrictedAccess>();
+        addRestrictedAccessIfPresent(method, annotations);
+        addRestrictedAccessIfPresent(method.getDeclaringClass(), annotations);
+        for (Class<?> iface : targetClass.getInterfaces()) {
+            for (Method ifaceMethod : iface.getMethods()) {
+                if (method.getName().equals(ifaceMethod.getName())
+                        && Arrays.equals(method.getParameterTypes(), ifaceMethod.getParameterTypes())) {
+                    addRestrictedAccessIfPresent(ifaceMethod, annotations);
+                    addRestrictedAccessIfPresent(iface, annotations);
+                    break;
+                }
+            }
+        }
+        if (annotations.isEmpty()) {
+            throw new IllegalArgumentException(String.format(
+                    "Could not find any @RestrictedAccess annotations on method (%s), class (%s), or interfaces.",
+                    method.getName(), method.getDeclaringClass().getCanonicalName()));
+        }
+        return annotations;
+    }
+
+    private void addRestrictedAccessIfPresent(AnnotatedElement annotated, List<RestrictedAccess> annotations) {
+        RestrictedAccess annotation = annotated.getAnnotation(RestrictedAccess.class);
+        if (annotation != null) {
+            annotations.add(annotation);
+        }
+    }
+
+    /**
+     * The roles required to call a method, resolved from its @RestrictedAccess annotations.
+     */
+    public static class AuthorizationPlan {
+        private final Set<Role> roles;
+        private final RestrictedAccess[] providerAnnotations;
+
+        public AuthorizationPlan(Set<Role> roles, RestrictedAccess[] providerAnnotations) {
+            super();
+            this.roles = roles;
+            this.providerAnnotations = providerAnnotations;
+        }
+
+        /**
+         * @param user
+         * @param roleExtractor used for the roles of annotations with providers
+         * @throws UnauthenticatedException if the user is anonymous
+         * @throws UnauthorizedException if the user does not have all the required roles
+         */
+        public void authorize(User user, RequiredRolesExtractor roleExtractor) {
+            if (User.ANONYMOUS.equals(user)) {
+                throw new UnauthenticatedException();
+            }
+            Set<Role> userRoles = user.getRoles();
+            if (!userRoles.containsAll(roles)) {
+                throw new UnauthorizedException();
+            }
+            for (RestrictedAccess annotation : providerAnnotations) {
+                if (!userRoles.containsAll(roleExtractor.extractProvidedRoles(annotation))) {
+                    throw new UnauthorizedException();
+                }
+            }
+        }
+
+        /**
+         * @return the roles that do not come from providers
+         */
+        public Set<Role> getRoles() {
+            return roles;
+        }
+
+        public boolean hasProviders() {
+            return providerAnnotations.length > 0;
+        }
     }
-    
+
     public static class ProxyInvocationContext implements InvocationContext {
         private ProceedingJoinPoint joinPoint;
         private Object[] parametersToPass;
@@ -1,13 +1,28 @@
 package com.expansel.errai.erraisecurity.server;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 import org.jboss.errai.security.shared.api.RequiredRolesProvider;
+import org.jboss.errai.security.shared.api.Role;
+import org.jboss.errai.security.shared.api.annotation.RestrictedAccess;
 import org.jboss.errai.security.shared.roles.SharedRequiredRolesExtractorImpl;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import com.expansel.errai.spring.server.cache.BoundedExpiringCache;
+
 /**
- * A RequiredRolesExtractor which does not destroy provider instances.
- *
+ * <p>A RequiredRolesExtractor which does not destroy provider instances.</p>
+ * 
+ * <p>Providers that are singleton beans are looked up once. The roles returned by providers 
+ * can also be cached per provider type and @RestrictedAccess annotation for a limited time 
+ * with {@link #enableResultCache(int, long, TimeUnit)}, for providers that are expensive to 
+ * call and whose roles do not depend on the current call.</p>
  *
  * @author Zach Visagie
  */
@@ -15,15 +30,85 @@ import org.springframework.stereotype.Component;
 public class SpringRequiredRolesExtractor extends SharedRequiredRolesExtractorImpl {
 
     private ApplicationContext context;
+    private final Map<Class<?>, RequiredRolesProvider> singletonProviders = new ConcurrentHashMap<Class<?>, RequiredRolesProvider>();
+    private volatile BoundedExpiringCache<ProviderResultKey, Set<Role>> resultCache;
 
     public SpringRequiredRolesExtractor(ApplicationContext context) {
         super();
         this.context = context;
     }
 
+    /**
+     * Caches the roles returned by each provider for each annotation it is used on.
+     * 
+     * @param maxSize the maximum number of cached results
+     * @param timeToLive how long a result is used before calling the provider again
+     * @param unit
+     */
+    public void enableResultCache(int maxSize, long timeToLive, TimeUnit unit) {
+        this.resultCache = new BoundedExpiringCache<ProviderResultKey, Set<Role>>(maxSize, timeToLive, unit);
+    }
+
+    /**
+     * Removes all cached provider results, e.g. after the roles in a database changed.
+     */
+    public void clearResultCache() {
+        BoundedExpiringCache<ProviderResultKey, Set<Role>> cache = resultCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return the result cache or null if it is not enabled
+     */
+    public BoundedExpiringCache<?, Set<Role>> getResultCache() {
+        return resultCache;
+    }
+
+    @Override
+    public Set<Role> extractProvidedRoles(RestrictedAccess annotation) {
+        BoundedExpiringCache<ProviderResultKey, Set<Role>> cache = resultCache;
+        Class<? extends RequiredRolesProvider>[] providerTypes = annotation.providers();
+        if (cache == null || providerTypes.length == 0) {
+            return super.extractProvidedRoles(annotation);
+        }
+        Set<Role> providedRoles = null;
+        for (Class<? extends RequiredRolesProvider> providerType : providerTypes) {
+            ProviderResultKey key = new ProviderResultKey(providerType, annotation);
+            Set<Role> roles = cache.get(key);
+            if (roles == null) {
+                RequiredRolesProvider provider = getProviderInstance(providerType);
+                try {
+                    roles = Collections.unmodifiableSet(new HashSet<Role>(provider.getRoles()));
+                } finally {
+                    destroyProviderInstance(provider);
+                }
+                cache.put(key, roles);
+            }
+            if (providerTypes.length == 1) {
+                return roles;
+            }
+            if (providedRoles == null) {
+                providedRoles = new HashSet<Role>();
+            }
+            providedRoles.addAll(roles);
+        }
+        return providedRoles;
+    }
+
     @Override
     protected RequiredRolesProvider getProviderInstance(Class<? extends RequiredRolesProvider> providerType) {
-        return context.getBean(providerType);
+        RequiredRolesProvider provider = singletonProviders.get(providerType);
+        if (provider != null) {
+            return provider;
+        }
+        provider = context.getBean(providerType);
+        String[] beanNames = context.getBeanNamesForType(providerType);
+        if (beanNames.length == 1 && context.isSingleton(beanNames[0])) {
+            singletonProviders.put(providerType, provider);
+        }
+        return provider;
     }
 
     @Override
@@ -31,4 +116,31 @@ public class SpringRequiredRolesExtractor extends SharedRequiredRolesExtractorIm
         // Assuming their all singletons
     }
 
-}
\ No newline at end of file
+    /**
+     * Annotation instances are cached by the JDK so they are compared by identity, which 
+     * avoids their reflective equals and hashCode.
+     */
+    private static final class ProviderResultKey {
+        private final Class<?> providerType;
+        private final RestrictedAccess annotation;
+
+        ProviderResultKey(Class<?> providerType, RestrictedAccess annotation) {
+            this.providerType = providerType;
+            this.annotation = annotation;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * providerType.hashCode() + System.identityHashCode(annotation);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ProviderResultKey)) {
+                return false;
+            }
+            ProviderResultKey other = (ProviderResultKey) obj;
+            return providerType == other.providerType && annotation == other.annotation;
+        }
+    }
+}
@@ -1,18 +1,31 @@
 package com.expansel.errai.spring.server;
 
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
 
+import org.jboss.errai.bus.client.api.CallableFuture;
+import org.jboss.errai.bus.client.api.Subscription;
 import org.jboss.errai.bus.client.api.builder.DefaultRemoteCallBuilder;
-import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageBus;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
 import org.jboss.errai.bus.server.annotations.Service;
 import org.jboss.errai.bus.server.api.ServerMessageBus;
-import org.jboss.errai.bus.server.io.RPCEndpointFactory;
 import org.jboss.errai.bus.server.io.RemoteServiceCallback;
 import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
 import org.jboss.errai.bus.server.service.ErraiService;
@@ -25,13 +38,25 @@ import org.jboss.errai.common.client.framework.ProxyFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.expansel.errai.spring.server.ServiceSubscriptions.ManagedSubscription;
+import com.expansel.errai.spring.server.cache.CacheableRpc;
+import com.expansel.errai.spring.server.cache.RpcResultCacheManager;
+import com.expansel.errai.spring.server.cache.SingleFlightRpc;
+import com.expansel.errai.spring.server.index.ServiceIndex;
+import com.expansel.errai.spring.server.scope.MessageScope;
+import com.expansel.errai.spring.server.scope.MessageScopeMessageCallbackWrapper;
 
 /**
  * <p>
@@ -68,6 +93,17 @@ import org.springframework.stereotype.Component;
  *
  * </pre>
  * 
+ * <p>
+ * When no {@link MessageCallbackWrapper} is passed to the constructor all MessageCallbackWrapper
+ * beans in the context are applied, ordered by {@link org.springframework.core.Ordered} or 
+ * &#64;Order with the first being the outermost, see {@link MessageCallbackWrapperChain}.
+ * Wrappers should then not also be passed to each other as delegates.
+ * </p>
+ * 
+ * <p>
+ * It also registers the {@link MessageScope}, bound around every service callback, for beans
+ * that live for the dispatch of a single message.
+ * </p>
  * 
  * @author Zach Visagie
  *
@@ -75,20 +111,143 @@ import org.springframework.stereotype.Component;
 @Component
 public class ErraiApplicationListener implements BeanFactoryPostProcessor {
     private static final Logger logger = LoggerFactory.getLogger(ErraiApplicationListener.class);
+    private static final Set<String> SECURITY_ANNOTATIONS = new HashSet<String>(Arrays.asList(
+            "org.jboss.errai.security.shared.api.annotation.RestrictedAccess",
+            "org.springframework.security.access.annotation.Secured",
+            "org.springframework.security.access.prepost.PreAuthorize",
+            "org.springframework.security.access.prepost.PostAuthorize",
+            "org.springframework.security.access.prepost.PreFilter",
+            "org.springframework.security.access.prepost.PostFilter",
+            "javax.annotation.security.RolesAllowed",
+            "javax.annotation.security.DenyAll"));
+    private static final String SCOPED_PROXY_FACTORY_BEAN = "org.springframework.aop.scope.ScopedProxyFactoryBean";
     private List<ServiceImplementation> services = new ArrayList<ServiceImplementation>();
     private MessageCallbackWrapper messageCallbackWrapper;
+    private volatile MessageCallbackWrapper callbackWrapper;
+    private final boolean discoverWrappers;
+    private ServiceInstanceProviderFactory serviceInstanceProviderFactory = new ScopeAwareServiceInstanceProviderFactory();
+    private RpcEndpointFactory rpcEndpointFactory = new ErraiRpcEndpointFactory();
+    private RpcResultCacheManager rpcResultCacheManager = new RpcResultCacheManager();
+    private boolean useServiceIndex = true;
+    private boolean verifyServiceIndex = false;
+    private boolean lazyServices = false;
+    private boolean messageScope = true;
+    private int callbackCreationParallelism = 1;
+    private volatile Map<String, Long> callbackCreationNanos = Collections.emptyMap();
     
     public ErraiApplicationListener() {
-        this(null); // null uses default
+        this(null); // null uses the wrapper beans
     }
     
     public ErraiApplicationListener(MessageCallbackWrapper messageCallbackWrapper) {
         this.messageCallbackWrapper = messageCallbackWrapper;
+        this.discoverWrappers = messageCallbackWrapper == null;
         if(messageCallbackWrapper == null) {
             this.messageCallbackWrapper = new NoWrapMessageCallbackWrapper();
         }
     }
+
+    /**
+     * Sets the strategy used to resolve RPC service beans on each call. Defaults to
+     * {@link ScopeAwareServiceInstanceProviderFactory}.
+     * 
+     * @param serviceInstanceProviderFactory
+     */
+    public void setServiceInstanceProviderFactory(ServiceInstanceProviderFactory serviceInstanceProviderFactory) {
+        this.serviceInstanceProviderFactory = Assert.notNull(serviceInstanceProviderFactory);
+    }
+
+    /**
+     * Sets the factory used to create the endpoint for each RPC method. Defaults to
+     * {@link ErraiRpcEndpointFactory}, use {@link MethodHandleRpcEndpointFactory} to avoid
+     * reflection on each call.
+     * 
+     * @param rpcEndpointFactory
+     */
+    public void setRpcEndpointFactory(RpcEndpointFactory rpcEndpointFactory) {
+        this.rpcEndpointFactory = Assert.notNull(rpcEndpointFactory);
+    }
+
+    /**
+     * Sets the manager of the result caches of {@link CacheableRpc} methods and the invokers of
+     * {@link SingleFlightRpc} methods. By default the 
+     * RpcResultCacheManager bean of the context is used if there is one.
+     * 
+     * @param rpcResultCacheManager
+     */
+    public void setRpcResultCacheManager(RpcResultCacheManager rpcResultCacheManager) {
+        this.rpcResultCacheManager = Assert.notNull(rpcResultCacheManager);
+    }
+
+    /**
+     * @return the manager of the result caches of {@link CacheableRpc} methods, e.g. to invalidate them
+     */
+    public RpcResultCacheManager getRpcResultCacheManager() {
+        return rpcResultCacheManager;
+    }
+
+    /**
+     * Whether to use the build time {@link ServiceIndex} when one is present on the classpath
+     * instead of scanning all bean definitions for the Errai @Service annotation. Defaults to
+     * <code>true</code>. When no index is present the bean factory is always scanned. Indexed 
+     * beans are matched by the class name of their definition, services created by a custom 
+     * FactoryBean are not found through the index.
+     * 
+     * @param useServiceIndex
+     */
+    public void setUseServiceIndex(boolean useServiceIndex) {
+        this.useServiceIndex = useServiceIndex;
+    }
+
+    /**
+     * Whether to check the {@link ServiceIndex} against the beans and remote interfaces, e.g. 
+     * during development when an incremental build may leave the index stale. @Service beans
+     * missing from the index are then found by scanning and RPC methods missing from it are 
+     * subscribed, both logged as a warning. This costs the scan the index saves so defaults to
+     * <code>false</code>.
+     * 
+     * @param verifyServiceIndex
+     */
+    public void setVerifyServiceIndex(boolean verifyServiceIndex) {
+        this.verifyServiceIndex = verifyServiceIndex;
+    }
     
+    /**
+     * Whether non RPC services are only created when their first message arrives, see 
+     * {@link LazyServiceMessageCallback}. Their singleton bean definitions are marked lazy-init
+     * so the context does not create them on refresh either. Defaults to <code>false</code>. 
+     * RPC services are already resolved per call by their {@link ServiceInstanceProvider}.
+     * 
+     * @param lazyServices
+     */
+    public void setLazyServices(boolean lazyServices) {
+        this.lazyServices = lazyServices;
+    }
+    
+    /**
+     * The number of threads used to create service callbacks, including the RPC endpoint 
+     * tables, when the context is refreshed. Defaults to 1, which creates them on the calling 
+     * thread. Above 1 the MessageCallbackWrappers, the RpcEndpointFactory and the service bean 
+     * lookups are used from several threads at once, so set it, e.g. to 
+     * {@link Runtime#availableProcessors()}, only when those are thread safe. Subscriptions are
+     * always made in order on the calling thread.
+     * 
+     * @param callbackCreationParallelism
+     */
+    public void setCallbackCreationParallelism(int callbackCreationParallelism) {
+        this.callbackCreationParallelism = callbackCreationParallelism;
+    }
+
+    /**
+     * Whether to register the {@link MessageScope} with the bean factory and bind it around 
+     * service callbacks. Defaults to <code>true</code>.
+     * 
+     * @param messageScope
+     */
+    public void setMessageScope(boolean messageScope) {
+        this.messageScope = messageScope;
+    }
+
     @EventListener
     public void onApplicationEvent(ContextClosedEvent event) {
         logger.info("ContextClosedEvent");
@@ -98,10 +257,15 @@ public class ErraiApplicationListener implements BeanFactoryPostProcessor {
     private void unsubscribeAll() {
         MessageBus bus = ErraiServiceSingleton.getService().getBus();
         if (bus != null) {
-            for (ServiceImplementation serviceImplementation : services) {
-                String subject = serviceImplementation.getSubject();
-                logger.info("Unsubscribing " + subject);
-                bus.unsubscribeAll(subject);
+            ServiceSubscriptions subscriptions = ServiceSubscriptions.forBus(bus);
+            synchronized (subscriptions) {
+                for (ServiceImplementation serviceImplementation : services) {
+                    String subject = serviceImplementation.getSubject();
+                    logger.info("Unsubscribing " + subject);
+                    if (subscriptions.remove(subject) == null) {
+                        bus.unsubscribeAll(subject);
+                    }
+                }
             }
         }
     }
@@ -111,53 +275,295 @@ public class ErraiApplicationListener implements BeanFactoryPostProcessor {
         logger.info("ContextRefreshedEvent");
 
         ApplicationContext applicationContext = event.getApplicationContext();
+        if (discoverWrappers) {
+            messageCallbackWrapper = createWrapperChain(applicationContext);
+        }
+        String[] cacheManagerNames = applicationContext.getBeanNamesForType(RpcResultCacheManager.class);
+        if (cacheManagerNames.length == 1) {
+            rpcResultCacheManager = applicationContext.getBean(cacheManagerNames[0], RpcResultCacheManager.class);
+        }
+        callbackWrapper = messageScope ? withMessageScope(messageCallbackWrapper) : messageCallbackWrapper;
         logger.info("Found " + services.size() + " services in " + Integer.toHexString(System.identityHashCode(applicationContext)) + ". Is it already active? " + ErraiServiceSingleton.isActive());
         
-        if(ErraiServiceSingleton.isActive()) {
-            logger.info("Already initialized so first unsubscribing current services, before reregistering");
-            unsubscribeAll();
-        }
+        // when already active the callback is run immediately and updates the existing 
+        // subscriptions in place
         ErraiServiceSingleton.registerInitCallback(new ErraiServiceSingleton.ErraiInitCallback() {
             @SuppressWarnings("rawtypes")
             @Override
             public void onInit(ErraiService service) {
-                logger.info("Subscribing " + services.size() + " services.");
-                for (ServiceImplementation serviceImplementation : services) {
-                    String subject = serviceImplementation.getSubject();
-                    MessageBus bus = ErraiServiceSingleton.getService().getBus();
-                    if(bus.isSubscribed(subject)) {
+                synchronizeSubscriptions(applicationContext, service.getBus());
+            }
+        });
+    }
+
+    private MessageCallbackWrapper createWrapperChain(ApplicationContext applicationContext) {
+        List<MessageCallbackWrapper> wrappers = new ArrayList<MessageCallbackWrapper>(
+                applicationContext.getBeansOfType(MessageCallbackWrapper.class).values());
+        if (wrappers.isEmpty()) {
+            return new NoWrapMessageCallbackWrapper();
+        }
+        AnnotationAwareOrderComparator.sort(wrappers);
+        logger.info("Using MessageCallbackWrappers " + wrappers);
+        return new MessageCallbackWrapperChain(wrappers);
+    }
+
+    /**
+     * Adds the {@link MessageScopeMessageCallbackWrapper} as the innermost wrapper.
+     */
+    private static MessageCallbackWrapper withMessageScope(MessageCallbackWrapper wrapper) {
+        MessageScopeMessageCallbackWrapper scopeWrapper = new MessageScopeMessageCallbackWrapper();
+        if (wrapper instanceof NoWrapMessageCallbackWrapper) {
+            return scopeWrapper;
+        }
+        List<MessageCallbackWrapper> wrappers = new ArrayList<MessageCallbackWrapper>();
+        if (wrapper instanceof MessageCallbackWrapperChain) {
+            wrappers.addAll(((MessageCallbackWrapperChain) wrapper).getWrappers());
+        } else {
+            wrappers.add(wrapper);
+        }
+        wrappers.add(scopeWrapper);
+        return new MessageCallbackWrapperChain(wrappers);
+    }
+
+    /**
+     * Brings the bus subscriptions in line with the current services. New services are 
+     * subscribed, removed ones unsubscribed and changed ones have their callback swapped 
+     * behind the existing subscription, so subjects always have a subscriber. A refresh 
+     * creates new bean instances, so the callbacks of all services are created again.
+     */
+    private void synchronizeSubscriptions(ApplicationContext applicationContext, ServerMessageBus bus) {
+        String owner = applicationContext.getId();
+        ServiceSubscriptions subscriptions = ServiceSubscriptions.forBus(bus);
+        int added = 0, changed = 0, removed = 0;
+        long start = System.nanoTime();
+        synchronized (subscriptions) {
+            Set<String> subjects = new HashSet<String>();
+            for (ServiceImplementation serviceImplementation : services) {
+                subjects.add(serviceImplementation.getSubject());
+            }
+
+            // the callbacks are created in parallel and subscribed in order
+            List<MessageCallback> callbacks = createCallbacks(applicationContext, bus, services);
+            for (int i = 0; i < services.size(); i++) {
+                ServiceImplementation serviceImplementation = services.get(i);
+                String subject = serviceImplementation.getSubject();
+                MessageCallback callback = callbacks.get(i);
+                ManagedSubscription existing = subscriptions.get(subject);
+                if (callback == null) {
+                    if (subscriptions.remove(subject) != null) {
+                        removed++;
+                    }
+                } else if (existing != null && existing.isLocal() == serviceImplementation.isLocal()) {
+                    logger.info("Updating " + subject);
+                    existing.swap(callback, owner);
+                    changed++;
+                } else {
+                    if (existing != null) {
+                        subscriptions.remove(subject);
+                    } else if (bus.isSubscribed(subject)) {
                         logger.info("Unsubscribing " + subject);
                         bus.unsubscribeAll(subject);
                     }
-                    subscribe(applicationContext, service, serviceImplementation);
+                    subscriptions.add(subscribe(bus, subject, serviceImplementation.isLocal(), callback, owner));
+                    added++;
                 }
             }
-        });
+            for (ManagedSubscription subscription : subscriptions.getSubscriptions(owner)) {
+                if (!subjects.contains(subscription.getSubject())) {
+                    logger.info("Unsubscribing removed service " + subscription.getSubject());
+                    subscriptions.remove(subscription.getSubject());
+                    removed++;
+                }
+            }
+        }
+        logger.info("Subscriptions updated in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms: " 
+                + added + " added, " + changed + " changed, " + removed + " removed.");
+    }
+
+    /**
+     * Creates the callbacks of the services, on a ForkJoinPool unless the parallelism is 1.
+     * 
+     * @return the callbacks in the order of the services, null for services that are not callbacks
+     */
+    private List<MessageCallback> createCallbacks(final ApplicationContext applicationContext, final ServerMessageBus bus,
+            final List<ServiceImplementation> serviceImplementations) {
+        final int count = serviceImplementations.size();
+        final long[] nanos = new long[count];
+        List<MessageCallback> callbacks = new ArrayList<MessageCallback>(count);
+        if (count == 0) {
+            return callbacks;
+        }
+        disableServerSideProxies();
+        int parallelism = Math.min(callbackCreationParallelism, count);
+        if (parallelism <= 1) {
+            for (int i = 0; i < count; i++) {
+                long start = System.nanoTime();
+                callbacks.add(createCallback(applicationContext, bus, serviceImplementations.get(i)));
+                nanos[i] = System.nanoTime() - start;
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism,
+                    new ContextClassLoaderWorkerThreadFactory(Thread.currentThread().getContextClassLoader()), null, false);
+            try {
+                List<ForkJoinTask<MessageCallback>> tasks = new ArrayList<ForkJoinTask<MessageCallback>>(count);
+                for (int i = 0; i < count; i++) {
+                    final int index = i;
+                    tasks.add(pool.submit(new Callable<MessageCallback>() {
+                        @Override
+                        public MessageCallback call() {
+                            long start = System.nanoTime();
+                            MessageCallback callback = createCallback(applicationContext, bus, serviceImplementations.get(index));
+                            nanos[index] = System.nanoTime() - start;
+                            return callback;
+                        }
+                    }));
+                }
+                for (ForkJoinTask<MessageCallback> task : tasks) {
+                    callbacks.add(task.join());
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        Map<String, Long> times = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < count; i++) {
+            String subject = serviceImplementations.get(i).getSubject();
+            times.put(subject, nanos[i]);
+            logger.info("Created callback for " + subject + " in " + TimeUnit.NANOSECONDS.toMicros(nanos[i]) + " us");
+        }
+        callbackCreationNanos = Collections.unmodifiableMap(times);
+        return callbacks;
+    }
+
+    private static void disableServerSideProxies() {
+        DefaultRemoteCallBuilder.setProxyFactory(Assert.notNull(new ProxyFactory() {
+            @Override
+            public <T> T getRemoteProxy(final Class<T> proxyType) {
+                throw new RuntimeException(
+                        "There is not yet an available Errai RPC implementation for the server-side environment.");
+            }
+        }));
+    }
+
+    /**
+     * @return the time in nanoseconds it took to create the callback of each service created 
+     * by the last refresh, by subject
+     */
+    public Map<String, Long> getCallbackCreationNanos() {
+        return callbackCreationNanos;
+    }
+
+    private static class ContextClassLoaderWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final ClassLoader classLoader;
+
+        ContextClassLoaderWorkerThreadFactory(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("errai-callback-init-" + thread.getPoolIndex());
+            thread.setContextClassLoader(classLoader);
+            return thread;
+        }
+    }
+
+    private ManagedSubscription subscribe(ServerMessageBus bus, String subject, boolean local, MessageCallback callback,
+            String owner) {
+        SwappableMessageCallback swappableCallback = new SwappableMessageCallback(callback);
+        Subscription subscription;
+        if (local) {
+            subscription = bus.subscribeLocal(subject, swappableCallback);
+        } else {
+            subscription = bus.subscribe(subject, swappableCallback);
+        }
+        return new ManagedSubscription(subject, local, subscription, swappableCallback, owner);
     }
 
     public static class ServiceImplementation {
-        private ServiceTypeParser serviceTypeParser;
-        private String objectName;
+        private volatile ServiceTypeParser serviceTypeParser;
+        private final Class<?> beanType;
+        private final String objectName;
+        private final ServiceIndex.Entry indexEntry;
 
         public ServiceImplementation(ServiceTypeParser serviceTypeParser, String objectName) {
             super();
             this.serviceTypeParser = serviceTypeParser;
+            this.beanType = serviceTypeParser.getDelegateClass();
+            this.objectName = objectName;
+            this.indexEntry = null;
+        }
+
+        /**
+         * Creates a service from a build time index entry, the {@link ServiceTypeParser} is 
+         * then only created when it is needed to subscribe a non RPC service.
+         * 
+         * @param beanType
+         * @param indexEntry
+         * @param objectName
+         */
+        public ServiceImplementation(Class<?> beanType, ServiceIndex.Entry indexEntry, String objectName) {
+            super();
+            this.beanType = beanType;
             this.objectName = objectName;
+            this.indexEntry = indexEntry;
         }
 
         public ServiceTypeParser getServiceTypeParser() {
-            return serviceTypeParser;
+            ServiceTypeParser parser = serviceTypeParser;
+            if (parser == null) {
+                try {
+                    parser = new ServiceTypeParser(beanType);
+                } catch (NotAService e) {
+                    throw new IllegalStateException("Indexed service is not a service: " + beanType, e);
+                }
+                serviceTypeParser = parser;
+            }
+            return parser;
         }
 
         public String getBeanName() {
             return objectName;
         }
 
+        public Class<?> getBeanType() {
+            return beanType;
+        }
+
+        /**
+         * @return the index entry this service was created from or null if it was found by scanning
+         */
+        public ServiceIndex.Entry getIndexEntry() {
+            return indexEntry;
+        }
+
         public boolean isRPC() {
+            if (indexEntry != null) {
+                return indexEntry.getRemoteInterface() != null;
+            }
             return serviceTypeParser.getRemoteImplementation() != null;
         }
 
+        public boolean isLocal() {
+            if (indexEntry != null) {
+                return indexEntry.isLocal();
+            }
+            return serviceTypeParser.isLocal();
+        }
+
+        public Class<?> getRemoteInterface() {
+            if (indexEntry != null) {
+                return indexEntry.getRemoteInterface() == null ? null
+                        : ClassUtils.resolveClassName(indexEntry.getRemoteInterface(), beanType.getClassLoader());
+            }
+            return serviceTypeParser.getRemoteImplementation();
+        }
+
         public String getSubject() {
+            if (indexEntry != null) {
+                return isRPC() ? indexEntry.getRemoteInterface() + ":RPC" : indexEntry.getSubject();
+            }
             // not sure why ServiceTypeParser does not return correct RPC name
             Class<?> remoteInterface = serviceTypeParser.getRemoteImplementation();
             if (remoteInterface != null) {
@@ -167,70 +573,261 @@ public class ErraiApplicationListener implements BeanFactoryPostProcessor {
         }
     }
 
-    @SuppressWarnings("rawtypes")
-    private void subscribe(final ApplicationContext applicationContext, final ErraiService service,
-            final ServiceImplementation serviceImplementation) {
-        final ServerMessageBus bus = ErraiServiceSingleton.getService().getBus();
-        ServiceTypeParser serviceTypeParser = serviceImplementation.getServiceTypeParser();
-
+    /**
+     * Creates the callback to subscribe for a service.
+     * 
+     * @return the callback or null if the service is not a callback
+     */
+    private MessageCallback createCallback(ApplicationContext applicationContext, ServerMessageBus bus,
+            ServiceImplementation serviceImplementation) {
+        String subject = serviceImplementation.getSubject();
         if (!serviceImplementation.isRPC()) {
-            String subject = serviceImplementation.getSubject();
+            ServiceTypeParser serviceTypeParser = serviceImplementation.getServiceTypeParser();
+            if (lazyServices) {
+                if (!serviceTypeParser.isCallback() && !serviceTypeParser.hasCommandPoints()) {
+                    return null;
+                }
+                logger.info("Subscribing lazy MessageCallback " + subject);
+                return callbackWrapper.wrap(new LazyServiceMessageCallback(applicationContext,
+                        serviceImplementation.getBeanName(), serviceTypeParser), subject, null);
+            }
             logger.info("Subscribing MessageCallback " + subject);
             // All the Errai supporting classes seem to be geared to having a
             // singleton here and Errai's CDI implementation also only supports
             // singletons for non-rpc's
             Object instance = applicationContext.getBean(serviceImplementation.getBeanName());
-            final MessageCallback callback = serviceTypeParser.getCallback(instance);
-            final MessageCallback wrappedCallback = messageCallbackWrapper.wrap(callback);
-            if (callback != null) {
-                if (serviceTypeParser.isLocal()) {
-                    bus.subscribeLocal(subject, wrappedCallback);
-                } else {
-                    bus.subscribe(subject, wrappedCallback);
-                }
+            MessageCallback callback = serviceTypeParser.getCallback(instance);
+            if (callback == null) {
+                return null;
             }
+            return callbackWrapper.wrap(callback, subject, null);
         } else {
-            String subject = serviceImplementation.getSubject();
             logger.info("Subscribing RPC " + subject);
-            final Map<String, MessageCallback> epts = new HashMap<String, MessageCallback>();
-            final ServiceInstanceProvider serviceInstanceProvider = new ServiceInstanceProvider() {
-                @Override
-                public Object get(Message message) {
-                    Object obj = applicationContext.getBean(serviceImplementation.getBeanName());
-                    logger.info("obj instance: " + obj.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(obj)));
-                    return obj;
+            Map<String, MessageCallback> epts = new HashMap<String, MessageCallback>();
+            ServiceInstanceProvider serviceInstanceProvider = serviceInstanceProviderFactory
+                    .createProvider(applicationContext, serviceImplementation.getBeanName());
+
+            Class<?> remoteInterface = serviceImplementation.getRemoteInterface();
+            ServiceIndex.Entry indexEntry = serviceImplementation.getIndexEntry();
+            Map<String, Method> methods = null;
+            if (indexEntry != null) {
+                methods = resolveIndexedMethods(remoteInterface, indexEntry.getCallSignatures());
+                if (methods == null || verifyServiceIndex) {
+                    // a signature that can not be looked up directly, e.g. with a type variable
+                    // parameter, falls back to reflection which also reveals a stale index
+                    Map<String, Method> declared = findRemoteMethods(remoteInterface);
+                    if (!declared.keySet().equals(new HashSet<String>(indexEntry.getCallSignatures()))) {
+                        logger.warn("Errai service index is out of date for " + subject + ", indexed call signatures "
+                                + indexEntry.getCallSignatures() + " but found " + declared.keySet());
+                    }
+                    methods = declared;
+                }
+            } else {
+                methods = findRemoteMethods(remoteInterface);
+            }
+            for (Map.Entry<String, Method> method : methods.entrySet()) {
+                String callSignature = method.getKey();
+                MessageCallback rpcCallback = createRpcEndpoint(serviceInstanceProvider, serviceImplementation.getBeanType(),
+                        method.getValue(), subject, callSignature, bus);
+                epts.put(callSignature, callbackWrapper.wrap(rpcCallback, subject, callSignature));
+            }
+            return new RemoteServiceCallback(epts);
+        }
+    }
+
+    /**
+     * @return the methods of the remote interface by call signature
+     */
+    private static Map<String, Method> findRemoteMethods(Class<?> remoteInterface) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        for (Method method : remoteInterface.getMethods()) {
+            if (ProxyUtil.isMethodInInterface(remoteInterface, method)) {
+                methods.put(ProxyUtil.createCallSignature(remoteInterface, method), method);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Looks up the method of each indexed call signature, e.g. <code>find:java.lang.String:int:</code>,
+     * directly instead of creating the signature of every method of the interface.
+     * 
+     * @return the methods by call signature or null if a signature could not be resolved, e.g. 
+     * it was removed or the parameter type is a type variable resolved by the interface
+     */
+    private static Map<String, Method> resolveIndexedMethods(Class<?> remoteInterface, List<String> callSignatures) {
+        Map<String, Method> methods = new LinkedHashMap<String, Method>();
+        ClassLoader classLoader = remoteInterface.getClassLoader();
+        for (String callSignature : callSignatures) {
+            String[] parts = callSignature.split(":");
+            Class<?>[] parameterTypes = new Class<?>[parts.length - 1];
+            try {
+                for (int i = 1; i < parts.length; i++) {
+                    parameterTypes[i - 1] = resolveCanonicalName(parts[i], classLoader);
                 }
-            };
+                methods.put(callSignature, remoteInterface.getMethod(parts[0], parameterTypes));
+            } catch (ClassNotFoundException | LinkageError | NoSuchMethodException e) {
+                logger.debug("Could not resolve indexed call signature " + callSignature + " of " + remoteInterface, e);
+                return null;
+            }
+        }
+        return methods;
+    }
 
-            Class<?> remoteInterface = serviceTypeParser.getRemoteImplementation();
-            for (final Method method : remoteInterface.getMethods()) {
-                if (ProxyUtil.isMethodInInterface(remoteInterface, method)) {
-                    MessageCallback rpcCallback = RPCEndpointFactory.createEndpointFor(serviceInstanceProvider, method, bus);
-                    MessageCallback wrappedCallback = messageCallbackWrapper.wrap(rpcCallback);
-                    epts.put(ProxyUtil.createCallSignature(remoteInterface, method), wrappedCallback);
+    /**
+     * Resolves a canonical class name as used in call signatures, where arrays end with [] and 
+     * nested classes are separated by dots.
+     */
+    private static Class<?> resolveCanonicalName(String name, ClassLoader classLoader) throws ClassNotFoundException {
+        if (name.endsWith("[]")) {
+            Class<?> componentType = resolveCanonicalName(name.substring(0, name.length() - 2), classLoader);
+            return Array.newInstance(componentType, 0).getClass();
+        }
+        String candidate = name;
+        while (true) {
+            try {
+                return ClassUtils.forName(candidate, classLoader);
+            } catch (ClassNotFoundException e) {
+                // try the enclosing classes, Outer.Inner is Outer$Inner
+                int lastDot = candidate.lastIndexOf('.');
+                if (lastDot < 0) {
+                    throw e;
                 }
+                candidate = candidate.substring(0, lastDot) + '$' + candidate.substring(lastDot + 1);
             }
+        }
+    }
+
+    /**
+     * Creates the endpoint of an RPC method, with a result cache for {@link CacheableRpc} methods 
+     * and coalescing of concurrent calls for {@link SingleFlightRpc} methods.
+     */
+    private MessageCallback createRpcEndpoint(ServiceInstanceProvider serviceInstanceProvider, Class<?> beanType, 
+            Method method, String subject, String callSignature, ServerMessageBus bus) {
+        CacheableRpc cacheable = findRpcAnnotation(CacheableRpc.class, beanType, method);
+        SingleFlightRpc singleFlight = findRpcAnnotation(SingleFlightRpc.class, beanType, method);
+        if (cacheable != null && !cacheable.perUser() && isSecured(beanType, method)) {
+            logger.error("Not caching results of " + subject + " " + callSignature 
+                    + ", a secured method must be cached per user: " + method);
+            cacheable = null;
+        }
+        if (singleFlight != null && !singleFlight.perUser() && isSecured(beanType, method)) {
+            logger.error("Not coalescing calls of " + subject + " " + callSignature 
+                    + ", a secured method must be coalesced per user: " + method);
+            singleFlight = null;
+        }
+        if (cacheable == null && singleFlight == null) {
+            return rpcEndpointFactory.createEndpoint(serviceInstanceProvider, method, bus);
+        }
+        if (method.getReturnType().equals(void.class) || CallableFuture.class.isAssignableFrom(method.getReturnType())) {
+            logger.warn("Ignoring @CacheableRpc and @SingleFlightRpc on method without a value reply: " + method);
+            return rpcEndpointFactory.createEndpoint(serviceInstanceProvider, method, bus);
+        }
+        RpcInvoker invoker = rpcEndpointFactory.createInvoker(serviceInstanceProvider, method);
+        if (singleFlight != null) {
+            logger.info("Coalescing concurrent calls of " + subject + " " + callSignature);
+            invoker = rpcResultCacheManager.createSingleFlightInvoker(invoker, subject, callSignature, singleFlight);
+        }
+        if (cacheable != null) {
+            logger.info("Caching results of " + subject + " " + callSignature);
+            invoker = rpcResultCacheManager.createInvoker(invoker, subject, callSignature, cacheable);
+        }
+        return new RpcEndpointCallback(method, invoker, bus);
+    }
 
-            final RemoteServiceCallback delegate = new RemoteServiceCallback(epts);
-            bus.subscribe(subject, new MessageCallback() {
-                @Override
-                public void callback(final Message message) {
-                    delegate.callback(message);
+    /**
+     * Finds an annotation on the remote interface method or the method implementing it.
+     */
+    private static <A extends Annotation> A findRpcAnnotation(Class<A> annotationType, Class<?> beanType, Method method) {
+        A annotation = AnnotationUtils.findAnnotation(method, annotationType);
+        if (annotation == null && beanType != null) {
+            annotation = AnnotationUtils.findAnnotation(ClassUtils.getMostSpecificMethod(method, beanType), annotationType);
+        }
+        return annotation;
+    }
+
+    /**
+     * Whether access to the method is checked by security annotations, on the remote interface
+     * or the bean, that are evaluated by the bean or its proxy and so skipped when a result is 
+     * shared. Annotations are matched by name so the security libraries stay optional.
+     */
+    private static boolean isSecured(Class<?> beanType, Method method) {
+        if (hasSecurityAnnotation(method) || hasSecurityAnnotation(method.getDeclaringClass())) {
+            return true;
+        }
+        if (beanType != null) {
+            Class<?> userType = ClassUtils.getUserClass(beanType);
+            if (hasSecurityAnnotation(ClassUtils.getMostSpecificMethod(method, userType))) {
+                return true;
+            }
+            for (Class<?> type = userType; type != null && type != Object.class; type = type.getSuperclass()) {
+                if (hasSecurityAnnotation(type)) {
+                    return true;
                 }
-            });
+            }
+        }
+        return false;
+    }
 
-            DefaultRemoteCallBuilder.setProxyFactory(Assert.notNull(new ProxyFactory() {
-                @Override
-                public <T> T getRemoteProxy(final Class<T> proxyType) {
-                    throw new RuntimeException(
-                            "There is not yet an available Errai RPC implementation for the server-side environment.");
+    /**
+     * Checks the annotations of the element and their meta annotations, e.g. a custom 
+     * annotation meta annotated with @PreAuthorize.
+     */
+    private static boolean hasSecurityAnnotation(AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (SECURITY_ANNOTATIONS.contains(annotation.annotationType().getName())) {
+                return true;
+            }
+            for (Annotation meta : annotation.annotationType().getAnnotations()) {
+                if (SECURITY_ANNOTATIONS.contains(meta.annotationType().getName())) {
+                    return true;
                 }
-            }));
+            }
         }
+        return false;
     }
 
     @Override
     public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        // a refreshable context may post process again with a new bean factory
+        services.clear();
+        findServices(beanFactory);
+        if (messageScope && beanFactory.getRegisteredScope(MessageScope.SCOPE_NAME) == null) {
+            beanFactory.registerScope(MessageScope.SCOPE_NAME, new MessageScope());
+        }
+        if (lazyServices) {
+            markLazyInit(beanFactory);
+        }
+    }
+
+    /**
+     * Stops the context from creating non RPC services on refresh, otherwise the 
+     * lazy callbacks would find them already created.
+     */
+    private void markLazyInit(ConfigurableListableBeanFactory beanFactory) {
+        for (ServiceImplementation serviceImplementation : services) {
+            String beanName = serviceImplementation.getBeanName();
+            if (!serviceImplementation.isRPC() && beanFactory.containsBeanDefinition(beanName)) {
+                BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+                if (beanDefinition.isSingleton()) {
+                    beanDefinition.setLazyInit(true);
+                }
+            }
+        }
+    }
+
+    private void findServices(ConfigurableListableBeanFactory beanFactory) {
+        if (useServiceIndex) {
+            ServiceIndex serviceIndex = ServiceIndex.load(beanFactory.getBeanClassLoader());
+            if (serviceIndex != null) {
+                logger.info("Look for Errai Service definitions using index " + ServiceIndex.INDEX_LOCATION);
+                registerIndexedServices(beanFactory, serviceIndex);
+                if (verifyServiceIndex) {
+                    registerUnindexedServices(beanFactory);
+                }
+                return;
+            }
+        }
         logger.info("Look for Errai Service definitions");
         String[] beanNames = beanFactory.getBeanNamesForAnnotation(Service.class);
         for (String beanName : beanNames) {
@@ -240,14 +837,72 @@ public class ErraiApplicationListener implements BeanFactoryPostProcessor {
                 // See org.springframework.aop.scope.ScopedProxyUtils
                 continue;
             }
-            Class<?> beanType = beanFactory.getType(beanName);
-            try {
-                ServiceTypeParser serviceTypeParser = new ServiceTypeParser(beanType);
-                services.add(new ServiceImplementation(serviceTypeParser, beanName));
-                logger.debug("Found Errai Service definition: beanName=" + beanName + ", beanType=" + beanType);
-            } catch (NotAService e) {
-                logger.warn("Service annotation present but threw NotAServiceException", e);
+            registerScannedService(beanFactory, beanName);
+        }
+    }
+
+    private void registerScannedService(ConfigurableListableBeanFactory beanFactory, String beanName) {
+        Class<?> beanType = beanFactory.getType(beanName);
+        try {
+            ServiceTypeParser serviceTypeParser = new ServiceTypeParser(beanType);
+            services.add(new ServiceImplementation(serviceTypeParser, beanName));
+            logger.debug("Found Errai Service definition: beanName=" + beanName + ", beanType=" + beanType);
+        } catch (NotAService e) {
+            logger.warn("Service annotation present but threw NotAServiceException", e);
+        }
+    }
+
+    /**
+     * Registers @Service beans missing from the index, e.g. when the index on the classpath 
+     * comes from a dependency or an incremental build that did not process every service.
+     */
+    private void registerUnindexedServices(ConfigurableListableBeanFactory beanFactory) {
+        Set<String> indexed = new HashSet<String>();
+        for (ServiceImplementation serviceImplementation : services) {
+            indexed.add(serviceImplementation.getBeanName());
+        }
+        for (String beanName : beanFactory.getBeanNamesForAnnotation(Service.class)) {
+            if (!beanName.startsWith("scopedTarget.") && !indexed.contains(beanName)) {
+                logger.warn("Errai service index is incomplete, bean " + beanName + " is not indexed and was found by scanning");
+                registerScannedService(beanFactory, beanName);
+            }
+        }
+    }
+
+    /**
+     * Matches bean definitions to index entries by class name, which needs neither class loading
+     * nor annotation lookups. Only definitions that do not name the bean class have their type 
+     * resolved.
+     */
+    private void registerIndexedServices(ConfigurableListableBeanFactory beanFactory, ServiceIndex serviceIndex) {
+        for (String beanName : beanFactory.getBeanDefinitionNames()) {
+            if (beanName.startsWith("scopedTarget.")) {
+                // See postProcessBeanFactory, only the scoped proxies are registered
+                continue;
+            }
+            BeanDefinition beanDefinition = beanFactory.getBeanDefinition(beanName);
+            if (beanDefinition.getBeanClassName() == null && beanDefinition.getParentName() != null) {
+                // child definitions inherit the class of their parent
+                beanDefinition = beanFactory.getMergedBeanDefinition(beanName);
+            }
+            String className = beanDefinition.getBeanClassName();
+            ServiceIndex.Entry entry = className == null ? null : serviceIndex.getEntry(className);
+            Class<?> beanType = null;
+            if (entry == null && (className == null || beanDefinition.getFactoryMethodName() != null
+                    || SCOPED_PROXY_FACTORY_BEAN.equals(className))) {
+                // the definition does not name the service class, e.g. @Bean methods and scoped proxies
+                beanType = beanFactory.getType(beanName);
+                if (beanType != null) {
+                    entry = serviceIndex.getEntry(ClassUtils.getUserClass(beanType).getName());
+                }
+            }
+            if (entry != null) {
+                if (beanType == null) {
+                    beanType = beanFactory.getType(beanName);
+                }
+                services.add(new ServiceImplementation(ClassUtils.getUserClass(beanType), entry, beanName));
+                logger.debug("Found indexed Errai Service definition: beanName=" + beanName + ", beanType=" + beanType);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,22 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.Method;
+
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.io.RPCEndpointFactory;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+
+/**
+ * Default {@link RpcEndpointFactory} which uses the reflective endpoints of the Errai 
+ * {@link RPCEndpointFactory}.
+ *
+ * @author Zach Visagie
+ */
+public class ErraiRpcEndpointFactory implements RpcEndpointFactory {
+
+    @Override
+    public MessageCallback createEndpoint(ServiceInstanceProvider serviceInstanceProvider, Method method, MessageBus bus) {
+        return RPCEndpointFactory.createEndpointFor(serviceInstanceProvider, method, bus);
+    }
+}
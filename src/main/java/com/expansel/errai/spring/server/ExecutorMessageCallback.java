@@ -0,0 +1,76 @@
+package com.expansel.errai.spring.server;
+
+import static org.jboss.errai.bus.client.util.ErrorHelper.handleMessageDeliveryFailure;
+
+import java.util.concurrent.Executor;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.QueueUnavailableException;
+import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * <p>Runs a {@link MessageCallback} on an {@link Executor}. The <code>SecurityContext</code> 
+ * and <code>RequestAttributes</code> of the delivering thread are captured when the message 
+ * is handed off and restored on the executing thread for the duration of the callback.</p>
+ * 
+ * <p>As the bus thread has already returned when the callback runs, exceptions are reported 
+ * to the client the same way the Errai bus worker does. Note that the servlet request may 
+ * already be completed by the time the callback runs, so request attributes should only be 
+ * relied on for values set before the message was delivered.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ExecutorMessageCallback implements MessageCallback {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorMessageCallback.class);
+
+    private final Executor executor;
+    private final MessageCallback messageCallback;
+
+    public ExecutorMessageCallback(Executor executor, MessageCallback messageCallback) {
+        super();
+        this.executor = executor;
+        this.messageCallback = messageCallback;
+    }
+
+    @Override
+    public void callback(final Message message) {
+        final SecurityContext securityContext = SecurityContextHolder.getContext();
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runCallback(message, securityContext, requestAttributes);
+            }
+        });
+    }
+
+    protected void runCallback(Message message, SecurityContext securityContext, RequestAttributes requestAttributes) {
+        SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+        RequestAttributes previousRequestAttributes = RequestContextHolder.getRequestAttributes();
+        SecurityContextHolder.setContext(securityContext);
+        RequestContextHolder.setRequestAttributes(requestAttributes);
+        try {
+            messageCallback.callback(message);
+        } catch (QueueUnavailableException e) {
+            logger.debug("queue not available", e);
+        } catch (Throwable e) {
+            message.setResource("Exception", e.getCause());
+            handleMessageDeliveryFailure(ErraiServiceSingleton.getService().getBus(), message,
+                    "Error calling remote service: " + message.getSubject(), e, false);
+        } finally {
+            SecurityContextHolder.setContext(previousSecurityContext);
+            if (previousRequestAttributes == null) {
+                RequestContextHolder.resetRequestAttributes();
+            } else {
+                RequestContextHolder.setRequestAttributes(previousRequestAttributes);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.common.client.api.Assert;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * <p>A {@link MessageCallbackWrapper} that hands message callbacks to an {@link Executor} 
+ * so slow services do not hold up the Errai bus worker threads. The Spring 
+ * <code>SecurityContext</code> and request attributes of the delivering thread are 
+ * propagated to the executing thread, see {@link ExecutorMessageCallback}.</p>
+ * 
+ * <p>Another wrapper can be passed in to be applied inside the executor, for example 
+ * the {@link com.expansel.errai.springsecurity.server.SpringSecurityMessageCallbackWrapper}
+ * so exception mapping happens on the executing thread:</p>
+ * <pre>
+ * new ErraiApplicationListener(ExecutorMessageCallbackWrapper.bounded(50, 1000, 
+ *         new ThreadPoolExecutor.AbortPolicy(), new SpringSecurityMessageCallbackWrapper()));
+ * </pre>
+ * 
+ * <p>When wrappers are discovered as beans by the {@link ErraiApplicationListener} this one
+ * is ordered first by default, so the other wrappers run on the executing thread as well.</p>
+ * 
+ * <p>Executors created by the static factory methods are shut down when the wrapper is
+ * destroyed, executors passed in through the constructor are left to their owner.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ExecutorMessageCallbackWrapper implements MessageCallbackWrapper, DisposableBean, Ordered {
+    private static final String THREAD_NAME_PREFIX = "errai-callback-";
+
+    private final Executor executor;
+    private final MessageCallbackWrapper delegateWrapper;
+    private final boolean ownsExecutor;
+    private int order = Ordered.HIGHEST_PRECEDENCE;
+
+    public ExecutorMessageCallbackWrapper(Executor executor) {
+        this(executor, null);
+    }
+
+    public ExecutorMessageCallbackWrapper(Executor executor, MessageCallbackWrapper delegateWrapper) {
+        this(executor, delegateWrapper, false);
+    }
+
+    protected ExecutorMessageCallbackWrapper(Executor executor, MessageCallbackWrapper delegateWrapper, boolean ownsExecutor) {
+        super();
+        this.executor = Assert.notNull(executor);
+        this.delegateWrapper = delegateWrapper == null ? new NoWrapMessageCallbackWrapper() : delegateWrapper;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Creates a wrapper using a fixed size thread pool with a bounded queue. When both the
+     * threads and the queue are full the rejection handler decides what happens, e.g. 
+     * {@link ThreadPoolExecutor.AbortPolicy} fails the message which is reported back to 
+     * the client and {@link ThreadPoolExecutor.CallerRunsPolicy} runs it on the bus thread.
+     * 
+     * @param threads
+     * @param queueCapacity
+     * @param rejectedExecutionHandler
+     * @param delegateWrapper optional wrapper applied inside the executor, may be null
+     * @return
+     */
+    public static ExecutorMessageCallbackWrapper bounded(int threads, int queueCapacity,
+            RejectedExecutionHandler rejectedExecutionHandler, MessageCallbackWrapper delegateWrapper) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(THREAD_NAME_PREFIX);
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory, rejectedExecutionHandler);
+        return new ExecutorMessageCallbackWrapper(executor, delegateWrapper, true);
+    }
+
+    /**
+     * Creates a wrapper running every message on its own virtual thread. This requires a JDK
+     * with virtual thread support (21+), on older JDKs an {@link IllegalStateException} is thrown.
+     * 
+     * @param delegateWrapper optional wrapper applied inside the executor, may be null
+     * @return
+     */
+    public static ExecutorMessageCallbackWrapper virtualThreads(MessageCallbackWrapper delegateWrapper) {
+        return new ExecutorMessageCallbackWrapper(newVirtualThreadPerTaskExecutor(), delegateWrapper, true);
+    }
+
+    /**
+     * @return true if the running JDK supports {@link #virtualThreads(MessageCallbackWrapper)}
+     */
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // looked up reflectively as the library still targets java 8
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads are not supported by this JDK: " + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback) {
+        return new ExecutorMessageCallback(executor, delegateWrapper.wrap(messageCallback));
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        return new ExecutorMessageCallback(executor, delegateWrapper.wrap(messageCallback, subject, endpoint));
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    /**
+     * Sets the position of this wrapper among discovered wrapper beans, defaults to 
+     * {@link Ordered#HIGHEST_PRECEDENCE} which makes it the outermost.
+     * 
+     * @param order
+     */
+    public void setOrder(int order) {
+        this.order = order;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (ownsExecutor && executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * <p>Calls a {@link MessageCallback} with a fixed set of {@link MessageCallbackInterceptor}s
+ * run in a flat loop. The values returned by the before hooks are kept in locals, or for 
+ * longer chains in a reusable per thread stack, so a call does not allocate.</p>
+ *
+ * @author Zach Visagie
+ */
+public class InterceptingMessageCallback implements MessageCallback {
+    private static final int SMALL_CHAIN = 4;
+    private static final ThreadLocal<TokenStack> tokenStacks = new ThreadLocal<TokenStack>() {
+        @Override
+        protected TokenStack initialValue() {
+            return new TokenStack();
+        }
+    };
+
+    private final MessageCallback messageCallback;
+    private final MessageCallbackInterceptor[] interceptors;
+
+    public InterceptingMessageCallback(MessageCallback messageCallback, MessageCallbackInterceptor[] interceptors) {
+        super();
+        this.messageCallback = messageCallback;
+        this.interceptors = interceptors.clone();
+    }
+
+    @Override
+    public void callback(Message message) {
+        if (interceptors.length <= SMALL_CHAIN) {
+            callbackSmall(message);
+        } else {
+            callbackStacked(message);
+        }
+    }
+
+    /**
+     * Keeps the tokens in locals, which avoids the thread local lookup for typical chains.
+     */
+    private void callbackSmall(Message message) {
+        final MessageCallbackInterceptor[] interceptors = this.interceptors;
+        final int count = interceptors.length;
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+        int entered = 0;
+        try {
+            for (; entered < count; entered++) {
+                long token = interceptors[entered].before(message);
+                switch (entered) {
+                case 0: t0 = token; break;
+                case 1: t1 = token; break;
+                case 2: t2 = token; break;
+                default: t3 = token; break;
+                }
+            }
+            messageCallback.callback(message);
+        } catch (Throwable t) {
+            Throwable error = t;
+            for (int i = entered - 1; i >= 0; i--) {
+                error = interceptors[i].onError(message, error, select(i, t0, t1, t2, t3));
+            }
+            throw rethrow(error);
+        }
+        Throwable failure = null;
+        for (int i = count - 1; i >= 0; i--) {
+            try {
+                interceptors[i].after(message, select(i, t0, t1, t2, t3));
+            } catch (Throwable t) {
+                failure = collect(failure, t);
+            }
+        }
+        if (failure != null) {
+            throw rethrow(failure);
+        }
+    }
+
+    private static long select(int index, long t0, long t1, long t2, long t3) {
+        switch (index) {
+        case 0: return t0;
+        case 1: return t1;
+        case 2: return t2;
+        default: return t3;
+        }
+    }
+
+    private void callbackStacked(Message message) {
+        final MessageCallbackInterceptor[] interceptors = this.interceptors;
+        final int count = interceptors.length;
+        // callbacks can be nested on the same thread, e.g. local messages, so each call 
+        // takes its own slots on the stack
+        final TokenStack stack = tokenStacks.get();
+        final int base = stack.push(count);
+        try {
+            int entered = 0;
+            try {
+                for (; entered < count; entered++) {
+                    long token = interceptors[entered].before(message);
+                    stack.tokens[base + entered] = token;
+                }
+                messageCallback.callback(message);
+            } catch (Throwable t) {
+                Throwable error = t;
+                for (int i = entered - 1; i >= 0; i--) {
+                    error = interceptors[i].onError(message, error, stack.tokens[base + i]);
+                }
+                throw rethrow(error);
+            }
+            Throwable failure = null;
+            for (int i = count - 1; i >= 0; i--) {
+                try {
+                    interceptors[i].after(message, stack.tokens[base + i]);
+                } catch (Throwable t) {
+                    failure = collect(failure, t);
+                }
+            }
+            if (failure != null) {
+                throw rethrow(failure);
+            }
+        } finally {
+            stack.pop(count);
+        }
+    }
+
+    /**
+     * A failing after hook does not stop the remaining ones, e.g. so a concurrency limit is 
+     * still released, the first failure is thrown once all have run.
+     */
+    private static Throwable collect(Throwable failure, Throwable t) {
+        if (failure == null) {
+            return t;
+        }
+        if (failure != t) {
+            failure.addSuppressed(t);
+        }
+        return failure;
+    }
+
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+        throw new UndeclaredThrowableException(error);
+    }
+
+    public MessageCallback getMessageCallback() {
+        return messageCallback;
+    }
+
+    public MessageCallbackInterceptor[] getInterceptors() {
+        return interceptors.clone();
+    }
+
+    private static final class TokenStack {
+        long[] tokens = new long[16];
+        int size;
+
+        int push(int count) {
+            int base = size;
+            size += count;
+            if (size > tokens.length) {
+                tokens = Arrays.copyOf(tokens, Math.max(size, tokens.length * 2));
+            }
+            return base;
+        }
+
+        void pop(int count) {
+            size -= count;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * <p>A {@link MessageCallbackWrapper} implemented with a {@link MessageCallbackInterceptor}. 
+ * When several of these are used together through a {@link MessageCallbackWrapperChain} 
+ * their interceptors run in one {@link InterceptingMessageCallback}.</p>
+ *
+ * @author Zach Visagie
+ */
+public interface InterceptingMessageCallbackWrapper extends MessageCallbackWrapper {
+
+    /**
+     * Creates the interceptor for a subject, called once when subscribing.
+     * 
+     * @param subject the subject or null if unknown
+     * @param endpoint the RPC call signature or null for non RPC callbacks
+     * @return
+     */
+    public MessageCallbackInterceptor createInterceptor(String subject, String endpoint);
+
+    @Override
+    public default MessageCallback wrap(MessageCallback messageCallback) {
+        return wrap(messageCallback, null, null);
+    }
+
+    @Override
+    public default MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        return new InterceptingMessageCallback(messageCallback,
+                new MessageCallbackInterceptor[] { createInterceptor(subject, endpoint) });
+    }
+}
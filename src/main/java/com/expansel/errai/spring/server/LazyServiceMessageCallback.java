@@ -0,0 +1,62 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.util.ServiceParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+
+/**
+ * <p>Subscribed in place of a non RPC service when the {@link ErraiApplicationListener} is set
+ * to lazy services. The service bean and its callback are only created when the first 
+ * message arrives and are then published to all threads through a volatile field. If 
+ * creating them fails the message fails and the next message tries again.</p>
+ *
+ * @author Zach Visagie
+ */
+public class LazyServiceMessageCallback implements MessageCallback {
+    private static final Logger logger = LoggerFactory.getLogger(LazyServiceMessageCallback.class);
+
+    private final BeanFactory beanFactory;
+    private final String beanName;
+    private final ServiceParser serviceParser;
+    private volatile MessageCallback delegate;
+
+    public LazyServiceMessageCallback(BeanFactory beanFactory, String beanName, ServiceParser serviceParser) {
+        super();
+        this.beanFactory = beanFactory;
+        this.beanName = beanName;
+        this.serviceParser = serviceParser;
+    }
+
+    @Override
+    public void callback(Message message) {
+        MessageCallback callback = delegate;
+        if (callback == null) {
+            callback = resolve();
+        }
+        callback.callback(message);
+    }
+
+    private synchronized MessageCallback resolve() {
+        MessageCallback callback = delegate;
+        if (callback == null) {
+            logger.info("Creating lazy service " + beanName);
+            Object instance = beanFactory.getBean(beanName);
+            callback = serviceParser.getCallback(instance);
+            if (callback == null) {
+                throw new IllegalStateException("Service " + beanName + " is not a MessageCallback and has no commands");
+            }
+            delegate = callback;
+        }
+        return callback;
+    }
+
+    /**
+     * @return true once the service has been created
+     */
+    public boolean isResolved() {
+        return delegate != null;
+    }
+}
@@ -0,0 +1,51 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+/**
+ * <p>Hooks around a message callback, created per subject by an 
+ * {@link InterceptingMessageCallbackWrapper}. Interceptors of consecutive wrappers are 
+ * fused into one {@link InterceptingMessageCallback} which calls them in a single loop, 
+ * instead of every wrapper adding another callback to the call stack.</p>
+ * 
+ * <p>Interceptors are called in wrapper order for {@link #before(Message)} and in reverse 
+ * order for {@link #after(Message, long)} and {@link #onError(Message, Throwable, long)}, 
+ * the same order nested wrappers would see them.</p>
+ *
+ * @author Zach Visagie
+ */
+public interface MessageCallbackInterceptor {
+
+    /**
+     * Called before the callback.
+     * 
+     * @param message
+     * @return a value that is passed back to after or onError, e.g. a start time, so 
+     * interceptors do not need to allocate per message state
+     */
+    public default long before(Message message) {
+        return 0;
+    }
+
+    /**
+     * Called after the callback completed normally. All after hooks are run even when one 
+     * of them fails, the first failure is thrown afterwards.
+     * 
+     * @param message
+     * @param token the value returned by {@link #before(Message)}
+     */
+    public default void after(Message message, long token) {
+    }
+
+    /**
+     * Called when the callback, or the before hook of a later interceptor, failed.
+     * 
+     * @param message
+     * @param error the error thrown or returned by the previous interceptor
+     * @param token the value returned by {@link #before(Message)}
+     * @return the error to pass on, which may be a different exception
+     */
+    public default Throwable onError(Message message, Throwable error, long token) {
+        return error;
+    }
+}
@@ -9,10 +9,28 @@ import com.expansel.errai.springsecurity.server.SpringSecurityMessageCallbackWra
  * allowing one to intercept calls to them. See the {@link SpringSecurityMessageCallbackWrapper} 
  * as an example which enables Spring Security annotations on Errai bus services by converting 
  * Spring security exceptions to Errai security exceptions.</p> 
+ * 
+ * <p>Wrap is called on one thread unless 
+ * {@link ErraiApplicationListener#setCallbackCreationParallelism(int)} is set above 1, in 
+ * which case implementations must be thread safe.</p>
  *
  * @author Zach Visagie
  */
 public interface MessageCallbackWrapper {
 
     public MessageCallback wrap(MessageCallback messageCallback);
+
+    /**
+     * Wraps the callback for a subject. The {@link ErraiApplicationListener} calls this method,
+     * which by default delegates to {@link #wrap(MessageCallback)}, so wrappers that need to 
+     * know what they are wrapping can override it.
+     * 
+     * @param messageCallback
+     * @param subject the subject the callback is subscribed to
+     * @param endpoint the RPC call signature for RPC endpoints or null for other callbacks
+     * @return
+     */
+    public default MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        return wrap(messageCallback);
+    }
 }
@@ -0,0 +1,63 @@
+package com.expansel.errai.spring.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * <p>Applies several {@link MessageCallbackWrapper}s in order, the first being the outermost. 
+ * Consecutive {@link InterceptingMessageCallbackWrapper}s are fused into a single 
+ * {@link InterceptingMessageCallback}, so they add neither stack depth nor extra callback 
+ * objects per subject. Other wrappers wrap the result as usual.</p>
+ * 
+ * <p>The {@link ErraiApplicationListener} builds one of these from all MessageCallbackWrapper 
+ * beans when it is not given a wrapper explicitly.</p>
+ *
+ * @author Zach Visagie
+ */
+public class MessageCallbackWrapperChain implements MessageCallbackWrapper {
+    private final List<MessageCallbackWrapper> wrappers;
+
+    public MessageCallbackWrapperChain(List<? extends MessageCallbackWrapper> wrappers) {
+        super();
+        this.wrappers = Collections.unmodifiableList(new ArrayList<MessageCallbackWrapper>(wrappers));
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback) {
+        return wrap(messageCallback, null, null);
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        MessageCallback result = messageCallback;
+        // interceptors of the current run of intercepting wrappers, innermost first
+        List<MessageCallbackInterceptor> interceptors = new ArrayList<MessageCallbackInterceptor>();
+        for (int i = wrappers.size() - 1; i >= 0; i--) {
+            MessageCallbackWrapper wrapper = wrappers.get(i);
+            if (wrapper instanceof InterceptingMessageCallbackWrapper) {
+                interceptors.add(((InterceptingMessageCallbackWrapper) wrapper).createInterceptor(subject, endpoint));
+            } else {
+                result = wrapper.wrap(intercept(result, interceptors), subject, endpoint);
+                interceptors.clear();
+            }
+        }
+        return intercept(result, interceptors);
+    }
+
+    private MessageCallback intercept(MessageCallback messageCallback, List<MessageCallbackInterceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return messageCallback;
+        }
+        List<MessageCallbackInterceptor> outermostFirst = new ArrayList<MessageCallbackInterceptor>(interceptors);
+        Collections.reverse(outermostFirst);
+        return new InterceptingMessageCallback(messageCallback,
+                outermostFirst.toArray(new MessageCallbackInterceptor[outermostFirst.size()]));
+    }
+
+    public List<MessageCallbackWrapper> getWrappers() {
+        return wrappers;
+    }
+}
@@ -0,0 +1,41 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.Method;
+
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>{@link RpcEndpointFactory} that binds every RPC method to a {@link MethodHandleRpcInvoker}
+ * when subscribing, which avoids {@link Method#invoke(Object, Object...)} on each call.
+ * Falls back to reflection for methods that cannot be accessed through a public lookup.</p>
+ * 
+ * <p>Example registration:</p>
+ * <pre>
+ * ErraiApplicationListener listener = new ErraiApplicationListener(wrapper);
+ * listener.setRpcEndpointFactory(new MethodHandleRpcEndpointFactory());
+ * </pre>
+ *
+ * @author Zach Visagie
+ */
+public class MethodHandleRpcEndpointFactory implements RpcEndpointFactory {
+    private static final Logger logger = LoggerFactory.getLogger(MethodHandleRpcEndpointFactory.class);
+
+    @Override
+    public MessageCallback createEndpoint(ServiceInstanceProvider serviceInstanceProvider, Method method, MessageBus bus) {
+        return new RpcEndpointCallback(method, createInvoker(serviceInstanceProvider, method), bus);
+    }
+
+    @Override
+    public RpcInvoker createInvoker(ServiceInstanceProvider serviceInstanceProvider, Method method) {
+        try {
+            return new MethodHandleRpcInvoker(serviceInstanceProvider, method);
+        } catch (IllegalAccessException e) {
+            logger.debug("Falling back to reflection for inaccessible RPC method: " + method, e);
+            return new ReflectionRpcInvoker(serviceInstanceProvider, method);
+        }
+    }
+}
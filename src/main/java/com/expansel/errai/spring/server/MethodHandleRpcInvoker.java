@@ -0,0 +1,44 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+
+/**
+ * <p>{@link RpcInvoker} that calls the RPC method through a {@link MethodHandle} linked 
+ * once when the endpoint is created. The handle is adapted to take the instance and an 
+ * argument array, so there are no access checks and a single call site per method.</p>
+ * 
+ * <p>Anything thrown by the handle, including argument type mismatches, is reported as 
+ * an {@link InvocationTargetException}.</p>
+ *
+ * @author Zach Visagie
+ */
+public class MethodHandleRpcInvoker implements RpcInvoker {
+    private final ServiceInstanceProvider serviceInstanceProvider;
+    private final MethodHandle handle;
+
+    public MethodHandleRpcInvoker(ServiceInstanceProvider serviceInstanceProvider, Method method) throws IllegalAccessException {
+        super();
+        this.serviceInstanceProvider = serviceInstanceProvider;
+        int parameterCount = method.getParameterTypes().length;
+        this.handle = MethodHandles.publicLookup().unreflect(method)
+                .asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+    }
+
+    @Override
+    public Object invoke(Message message, Object[] args) throws Exception {
+        Object instance = serviceInstanceProvider.get(message);
+        try {
+            return (Object) handle.invokeExact(instance, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+}
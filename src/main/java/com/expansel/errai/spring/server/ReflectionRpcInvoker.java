@@ -0,0 +1,28 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.Method;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+
+/**
+ * {@link RpcInvoker} using {@link Method#invoke(Object, Object...)}, matching what the 
+ * Errai RPC endpoints do.
+ *
+ * @author Zach Visagie
+ */
+public class ReflectionRpcInvoker implements RpcInvoker {
+    private final ServiceInstanceProvider serviceInstanceProvider;
+    private final Method method;
+
+    public ReflectionRpcInvoker(ServiceInstanceProvider serviceInstanceProvider, Method method) {
+        super();
+        this.serviceInstanceProvider = serviceInstanceProvider;
+        this.method = method;
+    }
+
+    @Override
+    public Object invoke(Message message, Object[] args) throws Exception {
+        return method.invoke(serviceInstanceProvider.get(message), args);
+    }
+}
@@ -0,0 +1,101 @@
+package com.expansel.errai.spring.server;
+
+import static org.jboss.errai.bus.client.api.base.MessageBuilder.createConversation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.jboss.errai.bus.client.api.CallableFuture;
+import org.jboss.errai.bus.client.api.base.MessageDeliveryFailure;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.QueueUnavailableException;
+import org.jboss.errai.bus.server.api.RpcContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>RPC endpoint for a single remote interface method which delegates the actual call to
+ * an {@link RpcInvoker}. Replies and error handling follow the Errai 
+ * <code>ValueReplyRPCEndpointCallback</code>, <code>VoidRPCEndpointCallback</code> and 
+ * <code>AsyncRPCEndpointCallback</code> classes, with the reply type decided once when 
+ * the endpoint is created.</p>
+ *
+ * @author Zach Visagie
+ */
+public class RpcEndpointCallback implements MessageCallback {
+    private static final Logger logger = LoggerFactory.getLogger(RpcEndpointCallback.class);
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private enum ReplyType {
+        VALUE, VOID, ASYNC
+    }
+
+    private final Method method;
+    private final RpcInvoker invoker;
+    private final MessageBus bus;
+    private final int parameterCount;
+    private final ReplyType replyType;
+
+    public RpcEndpointCallback(Method method, RpcInvoker invoker, MessageBus bus) {
+        super();
+        this.method = method;
+        this.invoker = invoker;
+        this.bus = bus;
+        this.parameterCount = method.getParameterTypes().length;
+        if (method.getReturnType().equals(void.class)) {
+            replyType = ReplyType.VOID;
+        } else if (CallableFuture.class.isAssignableFrom(method.getReturnType())) {
+            replyType = ReplyType.ASYNC;
+        } else {
+            replyType = ReplyType.VALUE;
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public void callback(Message message) {
+        Object result = invokeMethodFromMessage(message);
+        switch (replyType) {
+        case VALUE:
+            createConversation(message).subjectProvided().with("MethodReply", result).noErrorHandling().sendNowWith(bus);
+            break;
+        case VOID:
+            createConversation(message).subjectProvided().noErrorHandling().sendNowWith(bus);
+            break;
+        default:
+            // the CallableFuture replies itself
+            break;
+        }
+    }
+
+    protected Object invokeMethodFromMessage(Message message) {
+        @SuppressWarnings("unchecked")
+        List<Object> parms = message.get(List.class, "MethodParms");
+        if ((parms == null && parameterCount != 0) || (parms != null && parms.size() != parameterCount)) {
+            throw new MessageDeliveryFailure("wrong number of arguments sent to endpoint. (received: "
+                    + (parms == null ? 0 : parms.size()) + "; required: " + parameterCount + ")");
+        }
+
+        try {
+            RpcContext.set(message);
+            return invoker.invoke(message, parms == null || parameterCount == 0 ? NO_ARGS : parms.toArray(new Object[parameterCount]));
+        } catch (QueueUnavailableException e) {
+            throw e;
+        } catch (MessageDeliveryFailure e) {
+            throw e;
+        } catch (InvocationTargetException e) {
+            logger.debug("RPC endpoint threw exception:", e.getCause());
+            throw new MessageDeliveryFailure("error invoking RPC endpoint " + method, e.getCause(), true);
+        } catch (Exception e) {
+            throw new MessageDeliveryFailure("error invoking endpoint", e);
+        } finally {
+            RpcContext.remove();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.Method;
+
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+
+/**
+ * <p>Creates the endpoint {@link MessageCallback} for a single RPC interface method. The 
+ * {@link ErraiApplicationListener} calls this once per method when subscribing an RPC 
+ * service and routes calls to the endpoints by call signature.</p>
+ *
+ * @see ErraiRpcEndpointFactory
+ * @see MethodHandleRpcEndpointFactory
+ * @author Zach Visagie
+ */
+public interface RpcEndpointFactory {
+
+    public MessageCallback createEndpoint(ServiceInstanceProvider serviceInstanceProvider, Method method, MessageBus bus);
+
+    /**
+     * Creates the {@link RpcInvoker} used by endpoints that need to decorate the invocation 
+     * rather than the whole callback.
+     * 
+     * @param serviceInstanceProvider
+     * @param method
+     * @return
+     */
+    public default RpcInvoker createInvoker(ServiceInstanceProvider serviceInstanceProvider, Method method) {
+        return new ReflectionRpcInvoker(serviceInstanceProvider, method);
+    }
+}
@@ -0,0 +1,20 @@
+package com.expansel.errai.spring.server;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+/**
+ * <p>Invokes a single RPC method on the service instance for a message. Used by 
+ * {@link RpcEndpointCallback} which takes care of argument extraction and replies.</p>
+ * 
+ * <p>Exceptions thrown by the service method itself must be wrapped in an 
+ * {@link InvocationTargetException}, the same way reflection does, so the endpoint 
+ * can distinguish them from failures resolving the service.</p>
+ *
+ * @author Zach Visagie
+ */
+public interface RpcInvoker {
+
+    public Object invoke(Message message, Object[] args) throws Exception;
+}
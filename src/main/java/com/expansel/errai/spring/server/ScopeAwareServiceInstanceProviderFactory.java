@@ -0,0 +1,82 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * <p>Default {@link ServiceInstanceProviderFactory} which chooses how to resolve the 
+ * bean based on its Spring scope:</p>
+ * <ul>
+ * <li>Singletons, which includes scoped proxies (e.g. session or request scoped beans with
+ * <code>proxyMode</code> set), are looked up once on first use and the reference is kept.
+ * The scoped proxy takes care of resolving the correct target for each call.</li>
+ * <li>Prototypes and scoped beans without a proxy are looked up from the bean factory
+ * on every call so each call gets the instance Spring would hand out.</li>
+ * </ul>
+ *
+ * @author Zach Visagie
+ */
+public class ScopeAwareServiceInstanceProviderFactory implements ServiceInstanceProviderFactory {
+    private static final Logger logger = LoggerFactory.getLogger(ScopeAwareServiceInstanceProviderFactory.class);
+
+    @Override
+    public ServiceInstanceProvider createProvider(ApplicationContext applicationContext, String beanName) {
+        if (applicationContext.isSingleton(beanName)) {
+            logger.debug("Using cached instance provider for singleton bean: " + beanName);
+            return new SingletonServiceInstanceProvider(applicationContext, beanName);
+        }
+        logger.debug("Using lookup instance provider for non singleton bean: " + beanName);
+        return new LookupServiceInstanceProvider(applicationContext, beanName);
+    }
+
+    /**
+     * Resolves the bean on first use and returns the same instance from then on. Resolution
+     * is lazy so that lazy-init singletons are still only created when first called.
+     */
+    public static class SingletonServiceInstanceProvider implements ServiceInstanceProvider {
+        private final BeanFactory beanFactory;
+        private final String beanName;
+        private volatile Object instance;
+
+        public SingletonServiceInstanceProvider(BeanFactory beanFactory, String beanName) {
+            super();
+            this.beanFactory = beanFactory;
+            this.beanName = beanName;
+        }
+
+        @Override
+        public Object get(Message message) {
+            Object result = instance;
+            if (result == null) {
+                // getBean for a singleton always returns the same object so a race 
+                // here only results in a redundant lookup
+                result = beanFactory.getBean(beanName);
+                instance = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Looks up the bean on every call, for prototypes and scoped beans that are not proxied.
+     */
+    public static class LookupServiceInstanceProvider implements ServiceInstanceProvider {
+        private final BeanFactory beanFactory;
+        private final String beanName;
+
+        public LookupServiceInstanceProvider(BeanFactory beanFactory, String beanName) {
+            super();
+            this.beanFactory = beanFactory;
+            this.beanName = beanName;
+        }
+
+        @Override
+        public Object get(Message message) {
+            return beanFactory.getBean(beanName);
+        }
+    }
+}
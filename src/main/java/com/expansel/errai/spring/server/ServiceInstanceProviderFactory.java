@@ -0,0 +1,20 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * <p>Creates the {@link ServiceInstanceProvider} used by RPC endpoints registered by
+ * the {@link ErraiApplicationListener} to resolve the Spring bean backing a call.</p>
+ * 
+ * <p>The provider is created once per RPC service when subscribing, and is then called 
+ * for every RPC method invocation, so implementations should do as little work as 
+ * possible in {@link ServiceInstanceProvider#get(org.jboss.errai.bus.client.api.messaging.Message)}.</p>
+ *
+ * @see ScopeAwareServiceInstanceProviderFactory
+ * @author Zach Visagie
+ */
+public interface ServiceInstanceProviderFactory {
+
+    public ServiceInstanceProvider createProvider(ApplicationContext applicationContext, String beanName);
+}
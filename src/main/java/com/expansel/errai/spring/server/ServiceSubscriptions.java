@@ -0,0 +1,120 @@
+package com.expansel.errai.spring.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * <p>Keeps track of the subscriptions the {@link ErraiApplicationListener} made on a bus so 
+ * that a context refresh can update them in place instead of unsubscribing everything.</p>
+ * 
+ * <p>There is one instance per bus, shared by listener instances, as a refresh of a 
+ * refreshable context creates a new listener while the bus, like the 
+ * <code>ErraiServiceSingleton</code>, lives on. Callers synchronize on the instance while 
+ * reading and updating subscriptions.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ServiceSubscriptions {
+    private static final Map<MessageBus, ServiceSubscriptions> subscriptionsByBus = new WeakHashMap<MessageBus, ServiceSubscriptions>();
+
+    private final Map<String, ManagedSubscription> subscriptions = new HashMap<String, ManagedSubscription>();
+
+    public static ServiceSubscriptions forBus(MessageBus bus) {
+        synchronized (subscriptionsByBus) {
+            ServiceSubscriptions result = subscriptionsByBus.get(bus);
+            if (result == null) {
+                result = new ServiceSubscriptions();
+                subscriptionsByBus.put(bus, result);
+            }
+            return result;
+        }
+    }
+
+    public synchronized ManagedSubscription get(String subject) {
+        return subscriptions.get(subject);
+    }
+
+    public synchronized void add(ManagedSubscription subscription) {
+        subscriptions.put(subscription.getSubject(), subscription);
+    }
+
+    /**
+     * Removes the subscription from the bus and stops tracking it.
+     * 
+     * @param subject
+     * @return the removed subscription or null if the subject is not managed
+     */
+    public synchronized ManagedSubscription remove(String subject) {
+        ManagedSubscription subscription = subscriptions.remove(subject);
+        if (subscription != null) {
+            subscription.getSubscription().remove();
+        }
+        return subscription;
+    }
+
+    public synchronized List<ManagedSubscription> getSubscriptions(String owner) {
+        List<ManagedSubscription> result = new ArrayList<ManagedSubscription>();
+        for (ManagedSubscription subscription : subscriptions.values()) {
+            if (subscription.getOwner().equals(owner)) {
+                result.add(subscription);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A subject subscribed by the listener.
+     */
+    public static class ManagedSubscription {
+        private final String subject;
+        private final boolean local;
+        private final Subscription subscription;
+        private final SwappableMessageCallback callback;
+        private volatile String owner;
+
+        public ManagedSubscription(String subject, boolean local, Subscription subscription,
+                SwappableMessageCallback callback, String owner) {
+            super();
+            this.subject = subject;
+            this.local = local;
+            this.subscription = subscription;
+            this.callback = callback;
+            this.owner = owner;
+        }
+
+        public void swap(MessageCallback delegate, String owner) {
+            callback.setDelegate(delegate);
+            this.owner = owner;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        public Subscription getSubscription() {
+            return subscription;
+        }
+
+        public SwappableMessageCallback getCallback() {
+            return callback;
+        }
+
+        /**
+         * @return the id of the application context the subscription was made for
+         */
+        public String getOwner() {
+            return owner;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.expansel.errai.spring.server;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * <p>A {@link MessageCallback} that stays subscribed with the bus while the callback it 
+ * delegates to is replaced. Used by the {@link ErraiApplicationListener} so refreshing the 
+ * Spring context does not leave a window where a subject has no subscriber.</p>
+ * 
+ * <p>The delegate is swapped atomically, messages already being delivered complete on the
+ * previous delegate.</p>
+ *
+ * @author Zach Visagie
+ */
+public class SwappableMessageCallback implements MessageCallback {
+    private volatile MessageCallback delegate;
+
+    public SwappableMessageCallback(MessageCallback delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void callback(Message message) {
+        delegate.callback(message);
+    }
+
+    public MessageCallback getDelegate() {
+        return delegate;
+    }
+
+    public void setDelegate(MessageCallback delegate) {
+        this.delegate = delegate;
+    }
+}
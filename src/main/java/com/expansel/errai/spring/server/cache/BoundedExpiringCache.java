@@ -0,0 +1,198 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.common.client.api.Assert;
+
+/**
+ * <p>A concurrent cache with a maximum size whose entries expire a fixed time after they 
+ * were put. Reads do not lock. When a put takes the cache over its maximum size a single 
+ * thread sweeps it down to a bit below the maximum, so sweeps happen once per batch of puts 
+ * rather than on every put. A sweep moves a clock hand over the entries, samples a few at a 
+ * time, removes expired ones and evicts the sample entry that expires first, i.e. the oldest
+ * put. This approximates FIFO order without the bookkeeping of an LRU and the entry just put
+ * is never evicted by its own put.</p>
+ * 
+ * <p>The size may briefly exceed the maximum while puts race with a sweep.</p>
+ * 
+ * <p>Null keys and values are not supported.</p>
+ *
+ * @author Zach Visagie
+ */
+public class BoundedExpiringCache<K, V> {
+    private static final int SAMPLE_SIZE = 8;
+
+    private final ConcurrentHashMap<K, CacheEntry<V>> entries = new ConcurrentHashMap<K, CacheEntry<V>>();
+    private final int maxSize;
+    private final int sweepTarget;
+    private final long timeToLiveNanos;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    // guarded by sweeping
+    private Iterator<Map.Entry<K, CacheEntry<V>>> clockHand;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param timeToLive how long entries stay valid after being put
+     * @param unit
+     */
+    public BoundedExpiringCache(int maxSize, long timeToLive, TimeUnit unit) {
+        super();
+        Assert.notNull(unit);
+        if (maxSize <= 0 || timeToLive <= 0) {
+            throw new IllegalArgumentException("Max size and time to live must be positive");
+        }
+        this.maxSize = maxSize;
+        this.sweepTarget = maxSize - Math.max(1, maxSize / 16);
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+    }
+
+    /**
+     * @param key
+     * @return the value or null if there is none or it has expired
+     */
+    public V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null) {
+            if (!entry.isExpired(System.nanoTime())) {
+                hits.increment();
+                return entry.value;
+            }
+            entries.remove(key, entry);
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(K key, V value) {
+        CacheEntry<V> entry = new CacheEntry<V>(Assert.notNull(value), System.nanoTime() + timeToLiveNanos);
+        entries.put(key, entry);
+        if (entries.size() > maxSize && sweeping.compareAndSet(false, true)) {
+            try {
+                sweep(entry);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    public void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes the entry of the key only if it holds the value.
+     * 
+     * @param key
+     * @param value
+     */
+    public void remove(K key, V value) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry != null && entry.value.equals(value)) {
+            entries.remove(key, entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries including expired ones not yet removed
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Evicts until the size is at the sweep target, examining at most SAMPLE_SIZE
+     * entries per eviction.
+     * 
+     * @param inserted the entry of the put that triggered the sweep, which is kept
+     */
+    private void sweep(CacheEntry<V> inserted) {
+        long now = System.nanoTime();
+        while (entries.size() > sweepTarget) {
+            int removed = 0;
+            Map.Entry<K, CacheEntry<V>> oldest = null;
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                Map.Entry<K, CacheEntry<V>> candidate = advanceClockHand();
+                if (candidate == null) {
+                    break;
+                }
+                CacheEntry<V> entry = candidate.getValue();
+                if (entry == inserted) {
+                    continue;
+                }
+                if (entry.isExpired(now)) {
+                    if (entries.remove(candidate.getKey(), entry)) {
+                        removed++;
+                    }
+                } else if (oldest == null || entry.expiresAt - oldest.getValue().expiresAt < 0) {
+                    oldest = candidate;
+                }
+            }
+            if (removed == 0 && oldest != null && entries.remove(oldest.getKey(), oldest.getValue())) {
+                removed++;
+            }
+            if (removed == 0) {
+                // nothing evictable in the sample, e.g. entries removed concurrently
+                return;
+            }
+            evictions.add(removed);
+        }
+    }
+
+    private Map.Entry<K, CacheEntry<V>> advanceClockHand() {
+        if (clockHand == null || !clockHand.hasNext()) {
+            // iterators of a ConcurrentHashMap are weakly consistent so can be kept 
+            // between sweeps
+            clockHand = entries.entrySet().iterator();
+            if (!clockHand.hasNext()) {
+                return null;
+            }
+        }
+        return clockHand.next();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLive(TimeUnit unit) {
+        return unit.convert(timeToLiveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static final class CacheEntry<V> {
+        final V value;
+        final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Marks a read only RPC method whose results can be cached on the server, keyed by the 
+ * call arguments and optionally the user. The {@link com.expansel.errai.spring.server.ErraiApplicationListener}
+ * recognises it on the remote interface method or on the implementing method of the service 
+ * bean, the latter keeps the annotation out of code compiled for the client.</p>
+ * 
+ * <p>Arguments must implement equals() and hashCode(), arrays are compared by content, for 
+ * calls to hit the cache. Results are shared between callers and must not be modified. 
+ * Exceptions are not cached.</p>
+ * 
+ * <p>Results are cached per user unless {@link #perUser()} is turned off. A cache hit does 
+ * not call the service bean, so access checks of security annotations on the method or 
+ * bean, e.g. @RestrictedAccess, @PreAuthorize, @Secured or @RolesAllowed, are only done 
+ * when the user first calls it. Methods with such annotations are not cached when 
+ * perUser is off.</p>
+ *
+ * @see RpcResultCacheManager
+ * @author Zach Visagie
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableRpc {
+
+    /**
+     * @return how long a result is cached
+     */
+    long timeToLive() default 60;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return the maximum number of results cached for the method
+     */
+    int maxSize() default 1000;
+
+    /**
+     * @return whether results are cached per user, only turn it off when the result does not 
+     * depend on the caller and the method is not restricted
+     */
+    boolean perUser() default true;
+}
@@ -0,0 +1,36 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.util.Arrays;
+
+/**
+ * Identifies an RPC call by its arguments and, when results are per user, the user. Array 
+ * arguments are compared by content.
+ *
+ * @author Zach Visagie
+ */
+final class RpcCallKey {
+    private final Object[] args;
+    private final Object user;
+    private final int hash;
+
+    RpcCallKey(Object[] args, Object user) {
+        this.args = args;
+        this.user = user;
+        this.hash = 31 * Arrays.deepHashCode(args) + (user == null ? 0 : user.hashCode());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof RpcCallKey)) {
+            return false;
+        }
+        RpcCallKey other = (RpcCallKey) obj;
+        return hash == other.hash && Arrays.deepEquals(args, other.args)
+                && (user == null ? other.user == null : user.equals(other.user));
+    }
+}
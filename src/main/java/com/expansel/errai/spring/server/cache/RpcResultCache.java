@@ -0,0 +1,131 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+import com.expansel.errai.spring.server.RpcInvoker;
+
+/**
+ * <p>{@link RpcInvoker} caching the results of the invoker it decorates in a 
+ * {@link BoundedExpiringCache}, created by the {@link RpcResultCacheManager} for each 
+ * {@link CacheableRpc} method.</p>
+ * 
+ * <p>Invalidation is safe against calls in flight: a result computed before the cache was 
+ * invalidated is returned to its caller but not cached. A call that put its result while an 
+ * invalidation raced with it removes the result again.</p>
+ *
+ * @author Zach Visagie
+ */
+public class RpcResultCache implements RpcInvoker {
+    private static final Object NULL_RESULT = new Object();
+
+    private final RpcResultCacheManager manager;
+    private final RpcInvoker delegate;
+    private final String subject;
+    private final String callSignature;
+    private final boolean perUser;
+    private final BoundedExpiringCache<RpcCallKey, Object> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    public RpcResultCache(RpcResultCacheManager manager, RpcInvoker delegate, String subject, String callSignature, 
+            CacheableRpc cacheable) {
+        super();
+        this.manager = manager;
+        this.delegate = delegate;
+        this.subject = subject;
+        this.callSignature = callSignature;
+        this.perUser = cacheable.perUser();
+        this.cache = new BoundedExpiringCache<RpcCallKey, Object>(cacheable.maxSize(), cacheable.timeToLive(), cacheable.unit());
+    }
+
+    @Override
+    public Object invoke(Message message, Object[] args) throws Exception {
+        RpcCallKey key = new RpcCallKey(args, perUser ? manager.resolveUserKey(message) : null);
+        Object result = cache.get(key);
+        if (result != null) {
+            return result == NULL_RESULT ? null : result;
+        }
+        long current = generation.get();
+        result = delegate.invoke(message, args);
+        if (generation.get() == current) {
+            Object cached = result == null ? NULL_RESULT : result;
+            cache.put(key, cached);
+            // an invalidation between the check and the put may have missed the result
+            if (generation.get() != current) {
+                cache.remove(key, cached);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Removes the result cached for the arguments, for all users if cached per user.
+     * 
+     * @param args
+     */
+    public void invalidate(Object... args) {
+        if (perUser) {
+            invalidate();
+            return;
+        }
+        generation.incrementAndGet();
+        cache.remove(new RpcCallKey(args, null));
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getCallSignature() {
+        return callSignature;
+    }
+
+    public boolean isPerUser() {
+        return perUser;
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return the ratio of calls answered from the cache, 0 before the first call
+     */
+    public double getHitRate() {
+        long hits = cache.getHits();
+        long total = hits + cache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getTimeToLive(TimeUnit unit) {
+        return cache.getTimeToLive(unit);
+    }
+
+    @Override
+    public String toString() {
+        return "RpcResultCache [subject=" + subject + ", callSignature=" + callSignature + ", size=" + cache.size() 
+                + ", hitRate=" + getHitRate() + "]";
+    }
+}
@@ -0,0 +1,145 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.expansel.errai.spring.server.RpcInvoker;
+
+/**
+ * <p>Creates and keeps the {@link RpcResultCache} of every {@link CacheableRpc} method and the 
+ * {@link SingleFlightRpcInvoker} of every {@link SingleFlightRpc} method. The 
+ * {@link com.expansel.errai.spring.server.ErraiApplicationListener} uses the RpcResultCacheManager 
+ * bean of the context or, without one, its own instance, see 
+ * <code>ErraiApplicationListener.getRpcResultCacheManager()</code>. Use it to read hit rates 
+ * or invalidate results after the underlying data changed.</p>
+ * 
+ * <p>Results cached or coalesced per user are keyed by the name of the Spring Security authentication of the 
+ * call, anonymous callers share their results. Override {@link #resolveUserKey(Message)} to key 
+ * them differently.</p>
+ * 
+ * <p>Message callback wrappers, e.g. for security, still run for every call, but method level 
+ * checks done by the service bean itself are skipped on a cache hit. The listener therefore 
+ * does not cache methods with security annotations unless they are cached per user.</p>
+ *
+ * @author Zach Visagie
+ */
+public class RpcResultCacheManager {
+    private final ConcurrentMap<String, RpcResultCache> caches = new ConcurrentHashMap<String, RpcResultCache>();
+    private final ConcurrentMap<String, SingleFlightRpcInvoker> singleFlightInvokers = new ConcurrentHashMap<String, SingleFlightRpcInvoker>();
+
+    /**
+     * Creates the caching invoker for an RPC method, replacing the cache of an earlier 
+     * subscription of the same endpoint.
+     * 
+     * @param delegate
+     * @param subject
+     * @param callSignature
+     * @param cacheable
+     * @return
+     */
+    public RpcInvoker createInvoker(RpcInvoker delegate, String subject, String callSignature, CacheableRpc cacheable) {
+        RpcResultCache cache = new RpcResultCache(this, delegate, subject, callSignature, cacheable);
+        caches.put(key(subject, callSignature), cache);
+        return cache;
+    }
+
+    /**
+     * Creates the invoker coalescing identical concurrent calls of an RPC method.
+     * 
+     * @param delegate
+     * @param subject
+     * @param callSignature
+     * @param singleFlight
+     * @return
+     */
+    public RpcInvoker createSingleFlightInvoker(RpcInvoker delegate, String subject, String callSignature, SingleFlightRpc singleFlight) {
+        SingleFlightRpcInvoker invoker = new SingleFlightRpcInvoker(this, delegate, subject, callSignature, singleFlight);
+        singleFlightInvokers.put(key(subject, callSignature), invoker);
+        return invoker;
+    }
+
+    public Collection<SingleFlightRpcInvoker> getSingleFlightInvokers() {
+        return Collections.unmodifiableCollection(singleFlightInvokers.values());
+    }
+
+    /**
+     * @param subject
+     * @param callSignature
+     * @return the cache or null if the method is not cached
+     */
+    public RpcResultCache getCache(String subject, String callSignature) {
+        return caches.get(key(subject, callSignature));
+    }
+
+    public Collection<RpcResultCache> getCaches() {
+        return Collections.unmodifiableCollection(caches.values());
+    }
+
+    /**
+     * Removes the cached results of all methods of a service.
+     * 
+     * @param subject
+     */
+    public void invalidate(String subject) {
+        for (RpcResultCache cache : getCaches(subject)) {
+            cache.invalidate();
+        }
+    }
+
+    /**
+     * Removes the cached results of one method.
+     * 
+     * @param subject
+     * @param callSignature
+     */
+    public void invalidate(String subject, String callSignature) {
+        RpcResultCache cache = getCache(subject, callSignature);
+        if (cache != null) {
+            cache.invalidate();
+        }
+    }
+
+    public void invalidateAll() {
+        for (RpcResultCache cache : caches.values()) {
+            cache.invalidate();
+        }
+    }
+
+    private List<RpcResultCache> getCaches(String subject) {
+        List<RpcResultCache> result = new ArrayList<RpcResultCache>();
+        for (RpcResultCache cache : caches.values()) {
+            if (cache.getSubject().equals(subject)) {
+                result.add(cache);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Identifies the user a result is cached or coalesced for.
+     * 
+     * @param message the RPC call
+     * @return the key or null for anonymous callers
+     */
+    protected Object resolveUserKey(Message message) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() 
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    private static String key(String subject, String callSignature) {
+        return subject + "#" + callSignature;
+    }
+}
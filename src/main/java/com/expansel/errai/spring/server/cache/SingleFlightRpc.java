@@ -0,0 +1,45 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Coalesces identical concurrent calls of an RPC method: while a call with equal arguments 
+ * is running, later calls wait for its result, or exception, instead of invoking the service 
+ * again. Every caller still gets its own reply. Recognised like {@link CacheableRpc}, on the 
+ * remote interface method or the implementing method, and may be combined with it.</p>
+ * 
+ * <p>Arguments must implement equals() and hashCode(), arrays are compared by content, for 
+ * calls to be coalesced. Results are shared between callers and must not be modified.</p>
+ * 
+ * <p>Only calls of the same user are coalesced unless {@link #perUser()} is turned off. A 
+ * waiting call does not call the service bean, so methods with security annotations, e.g. 
+ * @RestrictedAccess, @PreAuthorize, @Secured or @RolesAllowed, are not coalesced when 
+ * perUser is off.</p>
+ *
+ * @see SingleFlightRpcInvoker
+ * @author Zach Visagie
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface SingleFlightRpc {
+
+    /**
+     * @return whether only calls of the same user are coalesced, only turn it off when the 
+     * result does not depend on the caller and the method is not restricted
+     */
+    boolean perUser() default true;
+
+    /**
+     * @return how long a call waits for the running call before invoking the service itself,
+     * 0 or less waits until the running call completes
+     */
+    long timeout() default 30;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,143 @@
+package com.expansel.errai.spring.server.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+import com.expansel.errai.spring.server.RpcInvoker;
+
+/**
+ * <p>{@link RpcInvoker} for {@link SingleFlightRpc} methods. The first caller of a set of 
+ * identical concurrent calls invokes the service, the others block until it completes and 
+ * return the same result or throw the same exception. Nothing is kept once the call 
+ * completes, a call arriving afterwards invokes the service again.</p>
+ * 
+ * <p>A call that waited longer than the timeout of the annotation for the running call 
+ * invokes the service itself, so a hanging call does not hold up every caller.</p>
+ *
+ * @author Zach Visagie
+ */
+public class SingleFlightRpcInvoker implements RpcInvoker {
+    private final RpcResultCacheManager manager;
+    private final RpcInvoker delegate;
+    private final String subject;
+    private final String callSignature;
+    private final boolean perUser;
+    private final long timeoutNanos;
+    private final ConcurrentMap<RpcCallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<RpcCallKey, CompletableFuture<Object>>();
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public SingleFlightRpcInvoker(RpcResultCacheManager manager, RpcInvoker delegate, String subject, String callSignature, 
+            SingleFlightRpc singleFlight) {
+        super();
+        this.manager = manager;
+        this.delegate = delegate;
+        this.subject = subject;
+        this.callSignature = callSignature;
+        this.perUser = singleFlight.perUser();
+        this.timeoutNanos = singleFlight.unit().toNanos(singleFlight.timeout());
+    }
+
+    @Override
+    public Object invoke(Message message, Object[] args) throws Exception {
+        RpcCallKey key = new RpcCallKey(args, perUser ? manager.resolveUserKey(message) : null);
+        CompletableFuture<Object> flight = new CompletableFuture<Object>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return await(running);
+            } catch (TimeoutException e) {
+                timedOut.increment();
+                invocations.increment();
+                return delegate.invoke(message, args);
+            }
+        }
+        invocations.increment();
+        try {
+            Object result = delegate.invoke(message, args);
+            flight.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private Object await(CompletableFuture<Object> running) throws Exception {
+        try {
+            return timeoutNanos > 0 ? running.get(timeoutNanos, TimeUnit.NANOSECONDS) : running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw (Exception) cause;
+        }
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getCallSignature() {
+        return callSignature;
+    }
+
+    public boolean isPerUser() {
+        return perUser;
+    }
+
+    /**
+     * @return the number of calls that invoked the service
+     */
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    /**
+     * @return the number of calls that waited for a call already running, including those 
+     * that timed out
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of calls that invoked the service after waiting for the running call 
+     * timed out
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    public long getTimeout(TimeUnit unit) {
+        return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of distinct calls running
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlightRpcInvoker [subject=" + subject + ", callSignature=" + callSignature + ", invocations=" 
+                + invocations + ", coalesced=" + coalesced + "]";
+    }
+}
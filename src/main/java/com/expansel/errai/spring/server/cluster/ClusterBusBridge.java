@@ -0,0 +1,426 @@
+package com.expansel.errai.spring.server.cluster;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
+import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import com.expansel.errai.spring.server.ErraiServerMessageBusFactoryBean;
+
+/**
+ * <p>Relays messages sent on selected subjects to the other nodes of a cluster, where they are 
+ * delivered with {@link MessageBus#sendGlobal(Message)} to the local subscribers and connected 
+ * clients, as if sent there. Server side pushes through the bus from 
+ * {@link ErraiServerMessageBusFactoryBean} then reach clients on every node, so a cluster only 
+ * needs sticky sessions.</p>
+ * 
+ * <p>Messages are encoded with the Errai protocol and queued, a sender thread batches them into 
+ * frames of up to maxBatchSize messages, waiting at most maxBatchDelayMillis for a batch to fill. 
+ * When the queue is full further messages are dropped and counted. Every message carries the id 
+ * of its node and a sequence number. For each origin node the highest sequence number received
+ * and a sliding bitset of the ones below it are kept, messages already seen or older than the 
+ * window are discarded, as are messages delivered by the bridge itself so they are not relayed 
+ * back.</p>
+ * 
+ * <p>As a Spring bean it starts once the Errai bus is initialized, otherwise call 
+ * {@link #start(MessageBus)}. The {@link ClusterTransport} moving the frames is pluggable, 
+ * {@link InJvmClusterTransport} and {@link SocketClusterTransport} are provided.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ClusterBusBridge implements ClusterTransport.FrameHandler, InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterBusBridge.class);
+
+    private final ClusterTransport transport;
+    private final ClusterFrameCodec codec = new ClusterFrameCodec();
+    private final long nodeId = UUID.randomUUID().getMostSignificantBits();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Set<String> subjects = new LinkedHashSet<String>();
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private int maxBatchSize = 256;
+    private long maxBatchDelayMillis = 5;
+    private int maxQueuedMessages = 10000;
+    private int deduplicationWindowSize = 4096;
+    private long deduplicationWindowMillis = 60000;
+    private BlockingQueue<ClusterMessage> outbound;
+    private final ConcurrentHashMap<Long, SequenceWindow> windows = new ConcurrentHashMap<Long, SequenceWindow>();
+    private volatile MessageBus bus;
+    private volatile boolean running;
+    private Thread sender;
+
+    public ClusterBusBridge(ClusterTransport transport, Collection<String> subjects) {
+        super();
+        this.transport = transport;
+        this.subjects.addAll(subjects);
+    }
+
+    /**
+     * @param maxBatchSize the maximum number of messages per frame, defaults to 256
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchDelayMillis how long a message may wait for others to batch it with, defaults to 5
+     */
+    public void setMaxBatchDelayMillis(long maxBatchDelayMillis) {
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+    }
+
+    /**
+     * @param maxQueuedMessages the number of messages waiting to be sent before new ones are dropped, defaults to 10000
+     */
+    public void setMaxQueuedMessages(int maxQueuedMessages) {
+        this.maxQueuedMessages = maxQueuedMessages;
+    }
+
+    /**
+     * Sets how many sequence numbers below the highest received are remembered per origin node,
+     * rounded up to a power of two of at least 64, and how long the window of a node that sent 
+     * nothing is kept. Defaults to 4096 and 60 seconds.
+     * 
+     * @param size
+     * @param millis
+     */
+    public void setDeduplicationWindow(int size, long millis) {
+        this.deduplicationWindowSize = size;
+        this.deduplicationWindowMillis = millis;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        ErraiServiceSingleton.registerInitCallback(new ErraiServiceSingleton.ErraiInitCallback() {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public void onInit(ErraiService service) {
+                try {
+                    start(service.getBus());
+                } catch (IOException e) {
+                    logger.error("Could not start cluster bus bridge", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Subscribes to the relayed subjects on the bus and starts the transport.
+     * 
+     * @param bus
+     * @throws IOException if the transport could not be started
+     */
+    public synchronized void start(MessageBus bus) throws IOException {
+        if (running) {
+            return;
+        }
+        this.outbound = new ArrayBlockingQueue<ClusterMessage>(maxQueuedMessages);
+        this.windows.clear();
+        this.bus = bus;
+        transport.start(this);
+        running = true;
+        MessageCallback relay = new MessageCallback() {
+            @Override
+            public void callback(Message message) {
+                relay(message);
+            }
+        };
+        for (String subject : subjects) {
+            subscriptions.add(bus.subscribeLocal(subject, relay));
+        }
+        sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendLoop();
+            }
+        }, "errai-cluster-bridge-" + Long.toHexString(nodeId));
+        sender.setDaemon(true);
+        sender.start();
+        logger.info("Cluster bus bridge " + Long.toHexString(nodeId) + " started for subjects " + subjects);
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Subscription subscription : subscriptions) {
+            subscription.remove();
+        }
+        subscriptions.clear();
+        sender.interrupt();
+        try {
+            sender.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transport.stop();
+        bus = null;
+        logger.info("Cluster bus bridge " + Long.toHexString(nodeId) + " stopped");
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        stop();
+    }
+
+    private void relay(Message message) {
+        if (message.isFlagSet(RoutingFlag.FromPeer) || !running) {
+            return;
+        }
+        ClusterMessage clusterMessage = new ClusterMessage(nodeId, sequence.incrementAndGet(), message.getSubject(),
+                encodePayload(message));
+        if (outbound.offer(clusterMessage)) {
+            relayed.increment();
+        } else {
+            dropped.increment();
+            logger.debug("Cluster queue full, dropped " + clusterMessage);
+        }
+    }
+
+    private void sendLoop() {
+        List<ClusterMessage> batch = new ArrayList<ClusterMessage>(maxBatchSize);
+        try {
+            while (running) {
+                ClusterMessage first = outbound.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    ClusterMessage next = remaining > 0 ? outbound.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        outbound.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    batch.add(next);
+                }
+                sendBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // stopping, send what is left
+        }
+        while (outbound.drainTo(batch, maxBatchSize) > 0) {
+            sendBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void sendBatch(List<ClusterMessage> batch) {
+        try {
+            transport.send(codec.encode(nodeId, batch));
+            framesSent.increment();
+        } catch (IOException e) {
+            dropped.add(batch.size());
+            logger.warn("Failed sending " + batch.size() + " messages to the cluster", e);
+        } catch (RuntimeException e) {
+            dropped.add(batch.size());
+            logger.error("Failed sending " + batch.size() + " messages to the cluster", e);
+        }
+    }
+
+    @Override
+    public void onFrame(byte[] frame) {
+        MessageBus current = bus;
+        if (current == null) {
+            return;
+        }
+        List<ClusterMessage> messages;
+        try {
+            messages = codec.decode(frame);
+        } catch (IOException e) {
+            logger.warn("Discarding invalid cluster frame of " + frame.length + " bytes", e);
+            return;
+        }
+        for (ClusterMessage clusterMessage : messages) {
+            if (clusterMessage.getOrigin() == nodeId || !markSeen(clusterMessage)) {
+                duplicates.increment();
+                continue;
+            }
+            try {
+                Message message = createMessage(clusterMessage);
+                message.setFlag(RoutingFlag.FromPeer);
+                current.sendGlobal(message);
+                received.increment();
+            } catch (RuntimeException e) {
+                logger.warn("Could not deliver " + clusterMessage, e);
+            }
+        }
+    }
+
+    private boolean markSeen(ClusterMessage clusterMessage) {
+        long now = System.nanoTime();
+        Long origin = clusterMessage.getOrigin();
+        SequenceWindow window = windows.get(origin);
+        if (window == null) {
+            // nodes get a new id when restarted, so windows of nodes gone quiet are dropped
+            // when another node appears
+            long idleNanos = TimeUnit.MILLISECONDS.toNanos(deduplicationWindowMillis);
+            for (Iterator<SequenceWindow> it = windows.values().iterator(); it.hasNext();) {
+                if (it.next().isIdle(now, idleNanos)) {
+                    it.remove();
+                }
+            }
+            SequenceWindow created = new SequenceWindow(deduplicationWindowSize);
+            window = windows.putIfAbsent(origin, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        return window.mark(clusterMessage.getSequence(), now);
+    }
+
+    /**
+     * Encodes the parts of a message to relay, override together with createMessage() to 
+     * use another encoding.
+     * 
+     * @param message
+     * @return the payload
+     */
+    protected byte[] encodePayload(Message message) {
+        return ErraiProtocol.encodePayload(message.getParts()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the message delivered on this node for a message relayed from another node.
+     * 
+     * @param clusterMessage
+     * @return the message
+     */
+    protected Message createMessage(ClusterMessage clusterMessage) {
+        return MessageFactory.createCommandMessage(IntrabusQueueSession.INSTANCE, 
+                new String(clusterMessage.getPayload(), StandardCharsets.UTF_8));
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the number of local messages queued for relaying
+     */
+    public long getRelayedCount() {
+        return relayed.sum();
+    }
+
+    /**
+     * @return the number of messages not relayed as the queue was full or sending failed
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getFramesSentCount() {
+        return framesSent.sum();
+    }
+
+    /**
+     * @return the number of messages from other nodes delivered locally
+     */
+    public long getReceivedCount() {
+        return received.sum();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * The highest sequence number received from a node and a ring of bits for the sequence 
+     * numbers below it. Frames of a node normally arrive on one transport thread so the lock 
+     * is uncontended.
+     */
+    private static final class SequenceWindow {
+        private final long[] bits;
+        private final int mask;
+        private long highest;
+        private volatile long lastUsed;
+
+        SequenceWindow(int size) {
+            int capacity = Math.max(64, Integer.highestOneBit(Math.max(1, size - 1)) << 1);
+            this.bits = new long[capacity / 64];
+            this.mask = capacity - 1;
+        }
+
+        /**
+         * @return false if the sequence number was seen or is too old to tell
+         */
+        synchronized boolean mark(long sequence, long now) {
+            lastUsed = now;
+            if (sequence > highest) {
+                if (sequence - highest > mask) {
+                    Arrays.fill(bits, 0);
+                } else {
+                    for (long skipped = highest + 1; skipped < sequence; skipped++) {
+                        clear(skipped);
+                    }
+                }
+                highest = sequence;
+                set(sequence);
+                return true;
+            }
+            if (highest - sequence > mask || isSet(sequence)) {
+                return false;
+            }
+            set(sequence);
+            return true;
+        }
+
+        boolean isIdle(long now, long idleNanos) {
+            return now - lastUsed > idleNanos;
+        }
+
+        private boolean isSet(long sequence) {
+            int index = (int) (sequence & mask);
+            return (bits[index >>> 6] & (1L << index)) != 0;
+        }
+
+        private void set(long sequence) {
+            int index = (int) (sequence & mask);
+            bits[index >>> 6] |= 1L << index;
+        }
+
+        private void clear(long sequence) {
+            int index = (int) (sequence & mask);
+            bits[index >>> 6] &= ~(1L << index);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.expansel.errai.spring.server.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Encodes a batch of {@link ClusterMessage}s from one node into a single binary frame:</p>
+ * 
+ * <pre>
+ * int     magic "ERBF"
+ * byte    version
+ * long    origin node
+ * varint  message count
+ * per message:
+ *   varlong sequence, the first absolute and the rest as delta to the previous
+ *   utf     subject
+ *   varint  payload length
+ *   bytes   payload
+ * </pre>
+ *
+ * @author Zach Visagie
+ */
+public class ClusterFrameCodec {
+    private static final int MAGIC = 0x45524246;
+    private static final byte VERSION = 1;
+
+    /**
+     * @param origin the node all messages originate on
+     * @param messages
+     * @return the frame
+     */
+    public byte[] encode(long origin, List<ClusterMessage> messages) {
+        int size = 16;
+        for (ClusterMessage message : messages) {
+            size += message.getPayload().length + message.getSubject().length() + 8;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(origin);
+            writeVarLong(out, messages.size());
+            long previous = 0;
+            for (ClusterMessage message : messages) {
+                if (message.getOrigin() != origin) {
+                    throw new IllegalArgumentException("Message from another node in frame: " + message);
+                }
+                writeVarLong(out, message.getSequence() - previous);
+                previous = message.getSequence();
+                out.writeUTF(message.getSubject());
+                writeVarLong(out, message.getPayload().length);
+                out.write(message.getPayload());
+            }
+            out.flush();
+        } catch (IOException e) {
+            // not thrown by ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param frame
+     * @return the messages in the frame
+     * @throws IOException if the frame is not valid
+     */
+    public List<ClusterMessage> decode(byte[] frame) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a cluster frame");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cluster frame version " + version);
+        }
+        long origin = in.readLong();
+        int count = readLength(in, frame.length);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<ClusterMessage> messages = new ArrayList<ClusterMessage>(count);
+        long sequence = 0;
+        for (int i = 0; i < count; i++) {
+            sequence += readVarLong(in);
+            String subject = in.readUTF();
+            byte[] payload = new byte[readLength(in, frame.length)];
+            in.readFully(payload);
+            messages.add(new ClusterMessage(origin, sequence, subject, payload));
+        }
+        return messages;
+    }
+
+    private static int readLength(DataInput in, int frameLength) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > frameLength) {
+            throw new IOException("Invalid length " + length + " in cluster frame");
+        }
+        return (int) length;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in cluster frame");
+    }
+}
@@ -0,0 +1,45 @@
+package com.expansel.errai.spring.server.cluster;
+
+/**
+ * A bus message relayed between nodes, identified by the node it originated on and a 
+ * sequence number unique on that node. The payload is the Errai protocol encoding of the 
+ * message parts.
+ *
+ * @author Zach Visagie
+ */
+public class ClusterMessage {
+    private final long origin;
+    private final long sequence;
+    private final String subject;
+    private final byte[] payload;
+
+    public ClusterMessage(long origin, long sequence, String subject, byte[] payload) {
+        super();
+        this.origin = origin;
+        this.sequence = sequence;
+        this.subject = subject;
+        this.payload = payload;
+    }
+
+    public long getOrigin() {
+        return origin;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterMessage [origin=" + Long.toHexString(origin) + ", sequence=" + sequence + ", subject=" + subject 
+                + ", payload=" + payload.length + " bytes]";
+    }
+}
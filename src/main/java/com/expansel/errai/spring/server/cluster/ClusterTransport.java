@@ -0,0 +1,36 @@
+package com.expansel.errai.spring.server.cluster;
+
+import java.io.IOException;
+
+/**
+ * <p>Carries frames produced by {@link ClusterFrameCodec} between the {@link ClusterBusBridge} 
+ * instances of a cluster. A frame sent by one node should reach every other node, delivering 
+ * it more than once or back to the sender is allowed as the bridge discards duplicates.</p>
+ *
+ * @author Zach Visagie
+ */
+public interface ClusterTransport {
+
+    /**
+     * Starts receiving frames from other nodes.
+     * 
+     * @param handler
+     * @throws IOException
+     */
+    public void start(FrameHandler handler) throws IOException;
+
+    /**
+     * Sends a frame to all other nodes. The frame must not be modified afterwards.
+     * 
+     * @param frame
+     * @throws IOException
+     */
+    public void send(byte[] frame) throws IOException;
+
+    public void stop();
+
+    public interface FrameHandler {
+
+        public void onFrame(byte[] frame);
+    }
+}
@@ -0,0 +1,59 @@
+package com.expansel.errai.spring.server.cluster;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Transport between bridges in the same JVM, e.g. to run several buses in one process for 
+ * testing. Bridges created with the same {@link Group} form a cluster. Frames are handed to the 
+ * other members on the sending thread.</p>
+ *
+ * @author Zach Visagie
+ */
+public class InJvmClusterTransport implements ClusterTransport {
+    private final Group group;
+    private volatile FrameHandler handler;
+
+    public InJvmClusterTransport(Group group) {
+        super();
+        this.group = group;
+    }
+
+    @Override
+    public void start(FrameHandler handler) {
+        this.handler = handler;
+        group.members.addIfAbsent(this);
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        for (InJvmClusterTransport member : group.members) {
+            if (member != this) {
+                member.receive(frame);
+            }
+        }
+    }
+
+    private void receive(byte[] frame) {
+        FrameHandler current = handler;
+        if (current != null) {
+            current.onFrame(frame);
+        }
+    }
+
+    @Override
+    public void stop() {
+        group.members.remove(this);
+        handler = null;
+    }
+
+    /**
+     * The transports of one in JVM cluster.
+     */
+    public static class Group {
+        private final CopyOnWriteArrayList<InJvmClusterTransport> members = new CopyOnWriteArrayList<InJvmClusterTransport>();
+
+        public int size() {
+            return members.size();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.expansel.errai.spring.server.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Transport sending length prefixed frames over TCP. Each node listens on its own port and 
+ * connects to the ports of its peers, reconnecting when a peer restarts. It binds to the loopback 
+ * address by default, which allows running several nodes on one host or in one process. Set a 
+ * bind address to use it between hosts on a trusted network, frames are neither encrypted nor 
+ * authenticated.</p>
+ * 
+ * <p>Frames for a peer that is not reachable are dropped.</p>
+ *
+ * @author Zach Visagie
+ */
+public class SocketClusterTransport implements ClusterTransport {
+    private static final Logger logger = LoggerFactory.getLogger(SocketClusterTransport.class);
+
+    private final int port;
+    private final List<Peer> peers = new ArrayList<Peer>();
+    private final Set<Socket> acceptedSockets = Collections.synchronizedSet(new HashSet<Socket>());
+    private InetAddress bindAddress = InetAddress.getLoopbackAddress();
+    private int connectTimeoutMillis = 1000;
+    private long reconnectDelayMillis = 1000;
+    private int maxFrameSize = 16 * 1024 * 1024;
+    private volatile ServerSocket serverSocket;
+    private volatile FrameHandler handler;
+
+    /**
+     * @param port the port to listen on
+     * @param peers the addresses of the other nodes
+     */
+    public SocketClusterTransport(int port, Collection<InetSocketAddress> peers) {
+        super();
+        this.port = port;
+        for (InetSocketAddress address : peers) {
+            this.peers.add(new Peer(address));
+        }
+    }
+
+    public void setBindAddress(InetAddress bindAddress) {
+        this.bindAddress = bindAddress;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param reconnectDelayMillis how long to wait before connecting to an unreachable peer again, defaults to 1000
+     */
+    public void setReconnectDelayMillis(long reconnectDelayMillis) {
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    /**
+     * @param maxFrameSize frames received with a larger length close the connection, defaults to 16MB
+     */
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public synchronized void start(FrameHandler handler) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Transport already started");
+        }
+        this.handler = handler;
+        final ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(bindAddress, port));
+        serverSocket = socket;
+        startThread("errai-cluster-accept-" + port, new Runnable() {
+            @Override
+            public void run() {
+                accept(socket);
+            }
+        });
+        logger.info("Cluster transport listening on " + socket.getLocalSocketAddress() + " with peers " + peers);
+    }
+
+    /**
+     * @return the port listened on, useful when started with port 0
+     */
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? port : socket.getLocalPort();
+    }
+
+    private void accept(ServerSocket server) {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                acceptedSockets.add(socket);
+                startThread("errai-cluster-read-" + socket.getRemoteSocketAddress(), new Runnable() {
+                    @Override
+                    public void run() {
+                        read(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    logger.warn("Failed accepting cluster connection", e);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            while (true) {
+                int length = in.readInt();
+                if (length < 0 || length > maxFrameSize) {
+                    logger.warn("Closing cluster connection from " + socket.getRemoteSocketAddress() 
+                            + " after invalid frame length " + length);
+                    break;
+                }
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                FrameHandler current = handler;
+                if (current != null) {
+                    current.onFrame(frame);
+                }
+            }
+        } catch (EOFException e) {
+            logger.debug("Cluster connection closed by " + socket.getRemoteSocketAddress());
+        } catch (SocketException e) {
+            logger.debug("Cluster connection from " + socket.getRemoteSocketAddress() + " closed", e);
+        } catch (IOException e) {
+            logger.warn("Failed reading from cluster connection " + socket.getRemoteSocketAddress(), e);
+        } finally {
+            acceptedSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        for (Peer peer : peers) {
+            peer.send(frame);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        handler = null;
+        ServerSocket socket = serverSocket;
+        serverSocket = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Failed closing cluster server socket", e);
+            }
+        }
+        synchronized (acceptedSockets) {
+            for (Socket accepted : acceptedSockets) {
+                closeQuietly(accepted);
+            }
+            acceptedSockets.clear();
+        }
+        for (Peer peer : peers) {
+            peer.close();
+        }
+    }
+
+    private static void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.debug("Failed closing cluster socket", e);
+        }
+    }
+
+    /**
+     * Outbound connection to one peer, connected on first use.
+     */
+    private class Peer {
+        private final InetSocketAddress address;
+        private Socket socket;
+        private DataOutputStream out;
+        private long nextConnectAttempt;
+        private boolean reachable = true;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        synchronized void send(byte[] frame) {
+            try {
+                if (out == null) {
+                    if (System.currentTimeMillis() < nextConnectAttempt) {
+                        return;
+                    }
+                    connect();
+                }
+                out.writeInt(frame.length);
+                out.write(frame);
+                out.flush();
+            } catch (IOException e) {
+                close();
+                nextConnectAttempt = System.currentTimeMillis() + reconnectDelayMillis;
+                if (reachable) {
+                    reachable = false;
+                    logger.warn("Cluster peer " + address + " is not reachable: " + e);
+                }
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket created = new Socket();
+            try {
+                created.setTcpNoDelay(true);
+                created.connect(address, connectTimeoutMillis);
+            } catch (IOException e) {
+                closeQuietly(created);
+                throw e;
+            }
+            socket = created;
+            out = new DataOutputStream(new BufferedOutputStream(created.getOutputStream()));
+            if (!reachable) {
+                reachable = true;
+                logger.info("Cluster peer " + address + " is reachable again");
+            }
+        }
+
+        synchronized void close() {
+            if (socket != null) {
+                closeQuietly(socket);
+            }
+            socket = null;
+            out = null;
+        }
+
+        @Override
+        public String toString() {
+            return address.toString();
+        }
+    }
+}
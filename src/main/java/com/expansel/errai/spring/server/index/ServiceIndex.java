@@ -0,0 +1,151 @@
+package com.expansel.errai.spring.server.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Index of Errai <code>@Service</code> classes generated at build time by the 
+ * {@link ServiceIndexProcessor}. Each line of {@value #INDEX_LOCATION} describes one service 
+ * with tab separated columns: class name, subject, local flag, remote interface 
+ * (<code>-</code> if none) and the space separated RPC call signatures.</p>
+ * 
+ * <p>All index files on the classpath are merged, so services from several jars can be 
+ * indexed as long as each was compiled with the processor.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ServiceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ServiceIndex.class);
+
+    public static final String INDEX_LOCATION = "META-INF/errai-services.index";
+    /**
+     * System property which, when set to <code>true</code>, makes {@link #load(ClassLoader)} 
+     * ignore any index so the bean factory is always scanned.
+     */
+    public static final String IGNORE_INDEX_PROPERTY = "errai.spring.index.ignore";
+
+    static final String NONE = "-";
+
+    private final Map<String, Entry> entries;
+
+    ServiceIndex(Map<String, Entry> entries) {
+        this.entries = Collections.unmodifiableMap(entries);
+    }
+
+    /**
+     * Loads and merges all index files visible to the class loader.
+     * 
+     * @param classLoader
+     * @return the index or null if there is no index on the classpath or it is ignored
+     */
+    public static ServiceIndex load(ClassLoader classLoader) {
+        if (Boolean.getBoolean(IGNORE_INDEX_PROPERTY)) {
+            return null;
+        }
+        ClassLoader loader = classLoader == null ? ServiceIndex.class.getClassLoader() : classLoader;
+        try {
+            Enumeration<URL> urls = loader.getResources(INDEX_LOCATION);
+            if (!urls.hasMoreElements()) {
+                return null;
+            }
+            Map<String, Entry> entries = new HashMap<String, Entry>();
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                logger.debug("Reading Errai service index: " + url);
+                for (Entry entry : read(url)) {
+                    entries.put(entry.getClassName(), entry);
+                }
+            }
+            return new ServiceIndex(entries);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to read Errai service index " + INDEX_LOCATION, e);
+        }
+    }
+
+    private static List<Entry> read(URL url) throws IOException {
+        List<Entry> result = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // no trim as the last column may be empty
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] columns = line.split("\t", -1);
+                if (columns.length != 5) {
+                    throw new IOException("Invalid line in " + url + ": " + line);
+                }
+                String remoteInterface = NONE.equals(columns[3]) ? null : columns[3];
+                List<String> callSignatures = columns[4].isEmpty() ? Collections.<String>emptyList()
+                        : Arrays.asList(columns[4].split(" "));
+                result.add(new Entry(columns[0], columns[1], Boolean.parseBoolean(columns[2]), remoteInterface, callSignatures));
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    public Entry getEntry(String className) {
+        return entries.get(className);
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public static class Entry {
+        private final String className;
+        private final String subject;
+        private final boolean local;
+        private final String remoteInterface;
+        private final List<String> callSignatures;
+
+        public Entry(String className, String subject, boolean local, String remoteInterface, List<String> callSignatures) {
+            super();
+            this.className = className;
+            this.subject = subject;
+            this.local = local;
+            this.remoteInterface = remoteInterface;
+            this.callSignatures = Collections.unmodifiableList(callSignatures);
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        /**
+         * @return the binary name of the @Remote interface or null if this is not an RPC service
+         */
+        public String getRemoteInterface() {
+            return remoteInterface;
+        }
+
+        public List<String> getCallSignatures() {
+            return callSignatures;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.expansel.errai.spring.server.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * <p>Annotation processor that writes an index of the classes annotated with the Errai 
+ * <code>@Service</code> annotation to {@value ServiceIndex#INDEX_LOCATION}, which the 
+ * {@link com.expansel.errai.spring.server.ErraiApplicationListener} uses instead of 
+ * scanning every bean definition for the annotation at startup.</p>
+ * 
+ * <p>For each service the subject, whether it is <code>@Local</code>, the <code>@Remote</code> 
+ * interface and the RPC call signatures are recorded, resolved the same way as the Errai 
+ * <code>ServiceTypeParser</code> and <code>ProxyUtil.createCallSignature</code> do.</p>
+ * 
+ * <p>The processor is registered through <code>META-INF/services</code> so it runs when 
+ * compiling against this library. Only services compiled in the same compilation are 
+ * indexed, so every module containing services needs to be compiled with the processor.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ServiceIndexProcessor extends AbstractProcessor {
+    static final String SERVICE_ANNOTATION = "org.jboss.errai.bus.server.annotations.Service";
+    static final String LOCAL_ANNOTATION = "org.jboss.errai.bus.client.api.Local";
+    static final String REMOTE_ANNOTATION = "org.jboss.errai.bus.server.annotations.Remote";
+
+    // sorted so the generated index is stable between builds
+    private final TreeMap<String, ServiceIndex.Entry> entries = new TreeMap<String, ServiceIndex.Entry>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(SERVICE_ANNOTATION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                // only type level services are supported by the listener
+                if (element.getKind() == ElementKind.CLASS) {
+                    TypeElement type = (TypeElement) element;
+                    String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+                    entries.put(className, createEntry(className, type));
+                }
+            }
+        }
+        return false;
+    }
+
+    private ServiceIndex.Entry createEntry(String className, TypeElement type) {
+        String subject = getServiceValue(type);
+        if (subject.isEmpty()) {
+            subject = type.getSimpleName().toString();
+        }
+        boolean local = findAnnotation(type, LOCAL_ANNOTATION) != null;
+        TypeElement remoteInterface = findRemoteInterface(type);
+        String remoteInterfaceName = null;
+        List<String> callSignatures = new ArrayList<String>();
+        if (remoteInterface != null) {
+            remoteInterfaceName = processingEnv.getElementUtils().getBinaryName(remoteInterface).toString();
+            callSignatures = createCallSignatures(remoteInterface);
+        }
+        return new ServiceIndex.Entry(className, subject, local, remoteInterfaceName, callSignatures);
+    }
+
+    private String getServiceValue(TypeElement type) {
+        AnnotationMirror service = findAnnotation(type, SERVICE_ANNOTATION);
+        for (java.util.Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : service.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals("value")) {
+                return (String) value.getValue().getValue();
+            }
+        }
+        return "";
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same search order as ServiceTypeParser.getRemoteImplementation().
+     */
+    private TypeElement findRemoteInterface(TypeElement type) {
+        for (TypeMirror interfaceType : type.getInterfaces()) {
+            TypeElement iface = (TypeElement) ((DeclaredType) interfaceType).asElement();
+            if (findAnnotation(iface, REMOTE_ANNOTATION) != null) {
+                return iface;
+            } else if (!iface.getInterfaces().isEmpty()) {
+                TypeElement remote = findRemoteInterface(iface);
+                if (remote != null) {
+                    return remote;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<String> createCallSignatures(TypeElement remoteInterface) {
+        List<String> callSignatures = new ArrayList<String>();
+        DeclaredType remoteType = (DeclaredType) remoteInterface.asType();
+        for (Element member : processingEnv.getElementUtils().getAllMembers(remoteInterface)) {
+            if (member.getKind() != ElementKind.METHOD || member.getEnclosingElement().getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            // Class.getMethods() does not return static methods inherited from super interfaces
+            if (member.getModifiers().contains(Modifier.STATIC) && !member.getEnclosingElement().equals(remoteInterface)) {
+                continue;
+            }
+            ExecutableType methodType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(remoteType, member);
+            StringBuilder signature = new StringBuilder(member.getSimpleName()).append(':');
+            for (TypeMirror parameterType : methodType.getParameterTypes()) {
+                signature.append(canonicalName(processingEnv.getTypeUtils().erasure(parameterType))).append(':');
+            }
+            callSignatures.add(signature.toString());
+        }
+        Collections.sort(callSignatures);
+        return callSignatures;
+    }
+
+    private String canonicalName(TypeMirror type) {
+        if (type.getKind() == TypeKind.DECLARED) {
+            return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+        } else if (type.getKind() == TypeKind.ARRAY) {
+            return canonicalName(((ArrayType) type).getComponentType()) + "[]";
+        } else if (type.getKind().isPrimitive()) {
+            return type.getKind().name().toLowerCase();
+        }
+        return type.toString();
+    }
+
+    // only uses the Entry class and the compile time constants of ServiceIndex, which are 
+    // inlined, so ServiceIndex and its logger are never initialized on the processor path
+    private String toLine(ServiceIndex.Entry entry) {
+        StringBuilder line = new StringBuilder();
+        line.append(entry.getClassName()).append('\t')
+            .append(entry.getSubject()).append('\t')
+            .append(entry.isLocal()).append('\t')
+            .append(entry.getRemoteInterface() == null ? ServiceIndex.NONE : entry.getRemoteInterface()).append('\t');
+        for (int i = 0; i < entry.getCallSignatures().size(); i++) {
+            if (i > 0) {
+                line.append(' ');
+            }
+            line.append(entry.getCallSignatures().get(i));
+        }
+        return line.append('\n').toString();
+    }
+
+    private void writeIndex() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", ServiceIndex.INDEX_LOCATION);
+            Writer writer = file.openWriter();
+            try {
+                writer.write("# Errai service index generated by " + ServiceIndexProcessor.class.getName() + "\n");
+                for (ServiceIndex.Entry entry : entries.values()) {
+                    writer.write(toLine(entry));
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write Errai service index: " + e);
+        }
+    }
+}
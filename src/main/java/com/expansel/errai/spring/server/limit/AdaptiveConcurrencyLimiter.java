@@ -0,0 +1,166 @@
+package com.expansel.errai.spring.server.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
+
+/**
+ * <p>Limits the calls in flight for a subject with a limit adjusted by additive increase, 
+ * multiplicative decrease (AIMD): a call slower than the latency threshold multiplies the 
+ * limit by the backoff ratio, other calls completing while at least half the limit was in use 
+ * raise it by one over the current limit, i.e. by about one per limit worth of calls. Calls 
+ * over the limit are rejected with a {@link ServiceOverloadedException}.</p>
+ * 
+ * <p>Fast calls that do not change the limit, i.e. with less than half the limit in use or 
+ * the limit at its maximum, do not take the lock.</p>
+ * 
+ * <p>As a {@link MessageCallbackInterceptor} the limit is taken before the callback and released 
+ * when it completes, with the start time as the token.</p>
+ *
+ * @author Zach Visagie
+ */
+public class AdaptiveConcurrencyLimiter implements MessageCallbackInterceptor, AdaptiveConcurrencyLimiterMXBean {
+    private final String subject;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final String overloadedMessage;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder slow = new LongAdder();
+    private double estimatedLimit;
+    private volatile int limit;
+
+    /**
+     * @param subject
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     * @param backoffRatio the factor the limit is multiplied with on slow calls, e.g. 0.9
+     * @param latencyThreshold calls taking longer reduce the limit
+     * @param unit
+     */
+    public AdaptiveConcurrencyLimiter(String subject, int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+            long latencyThreshold, TimeUnit unit) {
+        super();
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1");
+        }
+        this.subject = subject;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = unit.toNanos(latencyThreshold);
+        this.overloadedMessage = "Service overloaded: " + subject;
+        this.estimatedLimit = initialLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * @return true if the call may proceed, it must then be completed with {@link #release(long)}
+     */
+    public boolean tryAcquire() {
+        int current = inFlight.incrementAndGet();
+        if (current > limit) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * @param latencyNanos how long the call took
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        boolean slowCall = latencyNanos > latencyThresholdNanos;
+        if (slowCall) {
+            slow.increment();
+            decrease();
+        } else {
+            int currentLimit = limit;
+            if (current * 2 >= currentLimit && currentLimit < maxLimit) {
+                increase();
+            }
+        }
+    }
+
+    private synchronized void decrease() {
+        double estimate = Math.max(minLimit, estimatedLimit * backoffRatio);
+        estimatedLimit = estimate;
+        limit = (int) estimate;
+    }
+
+    private synchronized void increase() {
+        double estimate = Math.min(maxLimit, estimatedLimit + 1.0 / estimatedLimit);
+        estimatedLimit = estimate;
+        limit = (int) estimate;
+    }
+
+    @Override
+    public long before(Message message) {
+        if (!tryAcquire()) {
+            // a new instance per rejection so suppressed exceptions are never shared between 
+            // calls, it has no stack trace so stays cheap
+            throw new ServiceOverloadedException(overloadedMessage);
+        }
+        return System.nanoTime();
+    }
+
+    @Override
+    public void after(Message message, long token) {
+        release(System.nanoTime() - token);
+    }
+
+    @Override
+    public Throwable onError(Message message, Throwable error, long token) {
+        release(System.nanoTime() - token);
+        return error;
+    }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public int getLimit() {
+        return limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getSlowCount() {
+        return slow.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimiter [subject=" + subject + ", limit=" + limit + ", inFlight=" + inFlight + "]";
+    }
+}
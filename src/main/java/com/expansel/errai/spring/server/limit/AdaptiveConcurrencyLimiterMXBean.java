@@ -0,0 +1,24 @@
+package com.expansel.errai.spring.server.limit;
+
+/**
+ * JMX view of an {@link AdaptiveConcurrencyLimiter}.
+ *
+ * @author Zach Visagie
+ */
+public interface AdaptiveConcurrencyLimiterMXBean {
+
+    public String getSubject();
+
+    public int getLimit();
+
+    public int getInFlight();
+
+    public long getAcceptedCount();
+
+    public long getRejectedCount();
+
+    /**
+     * @return the number of calls slower than the latency threshold, which reduce the limit
+     */
+    public long getSlowCount();
+}
@@ -0,0 +1,147 @@
+package com.expansel.errai.spring.server.limit;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.expansel.errai.spring.server.ExecutorMessageCallbackWrapper;
+import com.expansel.errai.spring.server.InterceptingMessageCallbackWrapper;
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
+
+/**
+ * <p>Applies an {@link AdaptiveConcurrencyLimiter} per subject, all endpoints of an RPC service 
+ * sharing one limit. Messages over the limit fail fast with a {@link ServiceOverloadedException}
+ * instead of piling up behind a slow backend. The limiters are registered with JMX as 
+ * <code>com.expansel.errai:type=ConcurrencyLimit,subject="..."</code> and available from
+ * {@link #getLimiters()}.</p>
+ * 
+ * <p>Calls must hold the limit while they run, so when used with an 
+ * {@link ExecutorMessageCallbackWrapper} this wrapper has to be applied inside it.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ConcurrencyLimitMessageCallbackWrapper implements InterceptingMessageCallbackWrapper, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitMessageCallbackWrapper.class);
+    private static final String UNKNOWN_SUBJECT = "unknown";
+
+    private final ConcurrentMap<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<String, AdaptiveConcurrencyLimiter>();
+    private final Collection<ObjectName> registeredNames = Collections.synchronizedList(new ArrayList<ObjectName>());
+    private MBeanServer mbeanServer;
+    private String jmxDomain = "com.expansel.errai";
+    private int initialLimit = 20;
+    private int minLimit = 1;
+    private int maxLimit = 200;
+    private double backoffRatio = 0.9;
+    private long latencyThresholdMillis = 2000;
+
+    public ConcurrencyLimitMessageCallbackWrapper() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param mbeanServer the server to register limiters with or null to disable JMX
+     */
+    public ConcurrencyLimitMessageCallbackWrapper(MBeanServer mbeanServer) {
+        super();
+        this.mbeanServer = mbeanServer;
+    }
+
+    @Override
+    public MessageCallbackInterceptor createInterceptor(String subject, String endpoint) {
+        return getLimiter(subject == null ? UNKNOWN_SUBJECT : subject);
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter(String subject) {
+        AdaptiveConcurrencyLimiter limiter = limiters.get(subject);
+        if (limiter == null) {
+            AdaptiveConcurrencyLimiter created = new AdaptiveConcurrencyLimiter(subject, initialLimit, minLimit, maxLimit,
+                    backoffRatio, latencyThresholdMillis, TimeUnit.MILLISECONDS);
+            limiter = limiters.putIfAbsent(subject, created);
+            if (limiter == null) {
+                limiter = created;
+                register(created);
+            }
+        }
+        return limiter;
+    }
+
+    public Collection<AdaptiveConcurrencyLimiter> getLimiters() {
+        return Collections.unmodifiableCollection(limiters.values());
+    }
+
+    private void register(AdaptiveConcurrencyLimiter limiter) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(jmxDomain + ":type=ConcurrencyLimit,subject=" 
+                    + ObjectName.quote(limiter.getSubject()));
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(limiter, objectName);
+                registeredNames.add(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register concurrency limiter with JMX: " + limiter, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (mbeanServer == null) {
+            return;
+        }
+        synchronized (registeredNames) {
+            for (ObjectName objectName : registeredNames) {
+                try {
+                    mbeanServer.unregisterMBean(objectName);
+                } catch (JMException e) {
+                    logger.debug("Could not unregister " + objectName, e);
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+
+    public void setJmxDomain(String jmxDomain) {
+        this.jmxDomain = jmxDomain;
+    }
+
+    /**
+     * Sets the limits of limiters created afterwards.
+     * 
+     * @param initialLimit the starting concurrency limit, defaults to 20
+     * @param minLimit defaults to 1
+     * @param maxLimit defaults to 200
+     */
+    public void setLimits(int initialLimit, int minLimit, int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param backoffRatio the factor the limit is multiplied with on slow calls, defaults to 0.9
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @param latencyThresholdMillis calls taking longer reduce the limit, defaults to 2000
+     */
+    public void setLatencyThresholdMillis(long latencyThresholdMillis) {
+        this.latencyThresholdMillis = latencyThresholdMillis;
+    }
+}
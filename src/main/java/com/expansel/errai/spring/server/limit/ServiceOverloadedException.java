@@ -0,0 +1,29 @@
+package com.expansel.errai.spring.server.limit;
+
+import org.jboss.errai.bus.client.api.base.MessageDeliveryFailure;
+
+/**
+ * <p>Thrown when a message is rejected because its subject is at its concurrency limit. It 
+ * carries no stack trace so rejecting stays cheap under overload, and is flagged as an RPC 
+ * endpoint exception so the Errai ErrorHelper sends it to the client without logging every
+ * rejection as a message delivery failure.</p>
+ * 
+ * <p>The exception is not portable, so Errai marshals it to the client as a 
+ * RuntimeException whose message starts with the name of this class, e.g. 
+ * <code>{"^EncodedType":"java.lang.RuntimeException","message":"com.expansel.errai.spring.server.limit.ServiceOverloadedException:Service overloaded: ..."}</code>.
+ * Clients can match on that prefix in their error callbacks to back off and retry.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ServiceOverloadedException extends MessageDeliveryFailure {
+    private static final long serialVersionUID = 1L;
+
+    public ServiceOverloadedException(String message) {
+        super(message, null, true);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,106 @@
+package com.expansel.errai.spring.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * <p>Default {@link ServiceMetricsRegistry} which keeps metrics in memory and, unless 
+ * disabled, registers each of them as an MXBean with the platform MBean server under 
+ * <code>com.expansel.errai:type=ServiceMetrics,subject=...,endpoint=...</code>.</p>
+ *
+ * @author Zach Visagie
+ */
+public class DefaultServiceMetricsRegistry implements ServiceMetricsRegistry, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultServiceMetricsRegistry.class);
+    public static final String DEFAULT_JMX_DOMAIN = "com.expansel.errai";
+
+    private final ConcurrentMap<String, ServiceMetrics> metrics = new ConcurrentHashMap<String, ServiceMetrics>();
+    private final Collection<ObjectName> registeredNames = Collections.synchronizedList(new ArrayList<ObjectName>());
+    private MBeanServer mbeanServer;
+    private String jmxDomain = DEFAULT_JMX_DOMAIN;
+
+    public DefaultServiceMetricsRegistry() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param mbeanServer the server to register metrics with or null to disable JMX
+     */
+    public DefaultServiceMetricsRegistry(MBeanServer mbeanServer) {
+        super();
+        this.mbeanServer = mbeanServer;
+    }
+
+    public void setJmxDomain(String jmxDomain) {
+        this.jmxDomain = jmxDomain;
+    }
+
+    @Override
+    public ServiceMetrics getMetrics(String subject, String endpoint) {
+        String key = endpoint == null ? subject : subject + "#" + endpoint;
+        ServiceMetrics result = metrics.get(key);
+        if (result == null) {
+            ServiceMetrics created = new ServiceMetrics(subject, endpoint);
+            result = metrics.putIfAbsent(key, created);
+            if (result == null) {
+                result = created;
+                register(created);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Collection<ServiceMetrics> getAllMetrics() {
+        return Collections.unmodifiableCollection(metrics.values());
+    }
+
+    private void register(ServiceMetrics serviceMetrics) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            StringBuilder name = new StringBuilder(jmxDomain).append(":type=ServiceMetrics,subject=")
+                    .append(ObjectName.quote(serviceMetrics.getSubject()));
+            if (serviceMetrics.getEndpoint() != null) {
+                name.append(",endpoint=").append(ObjectName.quote(serviceMetrics.getEndpoint()));
+            }
+            ObjectName objectName = new ObjectName(name.toString());
+            if (!mbeanServer.isRegistered(objectName)) {
+                mbeanServer.registerMBean(serviceMetrics, objectName);
+                registeredNames.add(objectName);
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register service metrics with JMX: " + serviceMetrics, e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (mbeanServer == null) {
+            return;
+        }
+        synchronized (registeredNames) {
+            for (ObjectName objectName : registeredNames) {
+                try {
+                    mbeanServer.unregisterMBean(objectName);
+                } catch (JMException e) {
+                    logger.debug("Could not unregister " + objectName, e);
+                }
+            }
+            registeredNames.clear();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.expansel.errai.spring.server.metrics;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+
+/**
+ * Records every call to the wrapped {@link MessageCallback} in its {@link ServiceMetrics}.
+ *
+ * @author Zach Visagie
+ */
+public class MetricsMessageCallback implements MessageCallback {
+    private final MessageCallback messageCallback;
+    private final ServiceMetrics metrics;
+
+    public MetricsMessageCallback(MessageCallback messageCallback, ServiceMetrics metrics) {
+        super();
+        this.messageCallback = messageCallback;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void callback(Message message) {
+        long start = metrics.callStarted();
+        try {
+            messageCallback.callback(message);
+        } catch (RuntimeException e) {
+            metrics.callFailed(start);
+            throw e;
+        } catch (Error e) {
+            metrics.callFailed(start);
+            throw e;
+        }
+        metrics.callSucceeded(start);
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+}
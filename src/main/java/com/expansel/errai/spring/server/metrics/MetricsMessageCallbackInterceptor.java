@@ -0,0 +1,39 @@
+package com.expansel.errai.spring.server.metrics;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
+
+/**
+ * Interceptor form of {@link MetricsMessageCallback}, the start time is carried in the token.
+ *
+ * @author Zach Visagie
+ */
+public class MetricsMessageCallbackInterceptor implements MessageCallbackInterceptor {
+    private final ServiceMetrics metrics;
+
+    public MetricsMessageCallbackInterceptor(ServiceMetrics metrics) {
+        super();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long before(Message message) {
+        return metrics.callStarted();
+    }
+
+    @Override
+    public void after(Message message, long token) {
+        metrics.callSucceeded(token);
+    }
+
+    @Override
+    public Throwable onError(Message message, Throwable error, long token) {
+        metrics.callFailed(token);
+        return error;
+    }
+
+    public ServiceMetrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,63 @@
+package com.expansel.errai.spring.server.metrics;
+
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.common.client.api.Assert;
+
+import com.expansel.errai.spring.server.ErraiApplicationListener;
+import com.expansel.errai.spring.server.InterceptingMessageCallbackWrapper;
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
+import com.expansel.errai.spring.server.MessageCallbackWrapper;
+import com.expansel.errai.spring.server.MessageCallbackWrapperChain;
+
+/**
+ * <p>{@link MessageCallbackWrapper} recording call counts, errors, in-flight calls and 
+ * latency for every subject, and every method of RPC services, subscribed by the 
+ * {@link ErraiApplicationListener}.</p>
+ * 
+ * <p>Pass another wrapper to measure the calls including what it does, e.g.</p>
+ * <pre>
+ * new ErraiApplicationListener(new MetricsMessageCallbackWrapper(registry, new SpringSecurityMessageCallbackWrapper()));
+ * </pre>
+ * 
+ * <p>In a {@link MessageCallbackWrapperChain} only the interceptor of this wrapper is used, 
+ * so add the other wrappers to the chain after it instead of passing them in.</p>
+ *
+ * @author Zach Visagie
+ */
+public class MetricsMessageCallbackWrapper implements InterceptingMessageCallbackWrapper {
+    private static final String UNKNOWN_SUBJECT = "unknown";
+
+    private final ServiceMetricsRegistry registry;
+    private final MessageCallbackWrapper delegateWrapper;
+
+    public MetricsMessageCallbackWrapper(ServiceMetricsRegistry registry) {
+        this(registry, null);
+    }
+
+    public MetricsMessageCallbackWrapper(ServiceMetricsRegistry registry, MessageCallbackWrapper delegateWrapper) {
+        super();
+        this.registry = Assert.notNull(registry);
+        this.delegateWrapper = delegateWrapper;
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback) {
+        return wrap(messageCallback, UNKNOWN_SUBJECT, null);
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        MessageCallback callback = delegateWrapper == null ? messageCallback
+                : delegateWrapper.wrap(messageCallback, subject, endpoint);
+        return new MetricsMessageCallback(callback, registry.getMetrics(subject, endpoint));
+    }
+
+    @Override
+    public MessageCallbackInterceptor createInterceptor(String subject, String endpoint) {
+        return new MetricsMessageCallbackInterceptor(registry.getMetrics(subject == null ? UNKNOWN_SUBJECT : subject, endpoint));
+    }
+
+    public ServiceMetricsRegistry getRegistry() {
+        return registry;
+    }
+}
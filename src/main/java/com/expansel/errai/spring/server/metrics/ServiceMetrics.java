@@ -0,0 +1,161 @@
+package com.expansel.errai.spring.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Call statistics for a single bus subject, or a single RPC method of a subject. The 
+ * recording methods only use atomic counters so they neither allocate nor lock.</p>
+ * 
+ * <p>Latencies are kept in a histogram with power of two microsecond buckets, bucket 
+ * <code>i</code> counting calls that took less than <code>2^i</code> microseconds. 
+ * Percentiles are therefore an upper bound, accurate to a factor of two.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ServiceMetrics implements ServiceMetricsMXBean {
+    static final int BUCKETS = 32;
+
+    private final String subject;
+    private final String endpoint;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+    public ServiceMetrics(String subject, String endpoint) {
+        super();
+        this.subject = subject;
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Records the start of a call.
+     * 
+     * @return the start time to pass to {@link #callSucceeded(long)} or {@link #callFailed(long)}
+     */
+    public long callStarted() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void callSucceeded(long startNanos) {
+        callEnded(startNanos);
+    }
+
+    public void callFailed(long startNanos) {
+        errors.increment();
+        callEnded(startNanos);
+    }
+
+    private void callEnded(long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        inFlight.decrementAndGet();
+        calls.increment();
+        totalNanos.add(nanos);
+        latencyBuckets.incrementAndGet(bucketFor(nanos));
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+            // retry until we either set it or someone else recorded a longer call
+        }
+    }
+
+    static int bucketFor(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    @Override
+    public String getSubject() {
+        return subject;
+    }
+
+    @Override
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    @Override
+    public long getCallCount() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public double getMeanLatencyMicros() {
+        long count = calls.sum();
+        return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public long getMaxLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+
+    @Override
+    public long getLatency50thPercentileMicros() {
+        return getLatencyPercentileMicros(0.5);
+    }
+
+    @Override
+    public long getLatency95thPercentileMicros() {
+        return getLatencyPercentileMicros(0.95);
+    }
+
+    @Override
+    public long getLatency99thPercentileMicros() {
+        return getLatencyPercentileMicros(0.99);
+    }
+
+    /**
+     * @param percentile between 0 and 1
+     * @return the upper bound in microseconds of the bucket containing the percentile
+     */
+    public long getLatencyPercentileMicros(double percentile) {
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencyBuckets.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceMetrics [subject=" + subject + ", endpoint=" + endpoint + ", calls=" + getCallCount() 
+                + ", errors=" + getErrorCount() + ", inFlight=" + getInFlight() + "]";
+    }
+}
@@ -0,0 +1,37 @@
+package com.expansel.errai.spring.server.metrics;
+
+/**
+ * JMX view of {@link ServiceMetrics}.
+ *
+ * @author Zach Visagie
+ */
+public interface ServiceMetricsMXBean {
+
+    public String getSubject();
+
+    /**
+     * @return the RPC call signature or null for non RPC services
+     */
+    public String getEndpoint();
+
+    public long getCallCount();
+
+    public long getErrorCount();
+
+    public long getInFlight();
+
+    public double getMeanLatencyMicros();
+
+    public long getMaxLatencyMicros();
+
+    public long getLatency50thPercentileMicros();
+
+    public long getLatency95thPercentileMicros();
+
+    public long getLatency99thPercentileMicros();
+
+    /**
+     * @return call counts per latency bucket, bucket i counting calls below 2^i microseconds
+     */
+    public long[] getLatencyHistogram();
+}
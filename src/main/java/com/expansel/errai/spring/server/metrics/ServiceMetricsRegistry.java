@@ -0,0 +1,27 @@
+package com.expansel.errai.spring.server.metrics;
+
+import java.util.Collection;
+
+/**
+ * <p>Holds the {@link ServiceMetrics} for every subject and RPC method. Used by the 
+ * {@link MetricsMessageCallbackWrapper} when wrapping callbacks, so 
+ * {@link #getMetrics(String, String)} is only called when subscribing, not per message.</p>
+ * 
+ * <p>Implement this to publish the metrics to a different monitoring system.</p>
+ *
+ * @see DefaultServiceMetricsRegistry
+ * @author Zach Visagie
+ */
+public interface ServiceMetricsRegistry {
+
+    /**
+     * Gets or creates the metrics for a subject and endpoint.
+     * 
+     * @param subject
+     * @param endpoint the RPC call signature or null for non RPC services
+     * @return
+     */
+    public ServiceMetrics getMetrics(String subject, String endpoint);
+
+    public Collection<ServiceMetrics> getAllMetrics();
+}
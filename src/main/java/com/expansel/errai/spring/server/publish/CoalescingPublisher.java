@@ -0,0 +1,357 @@
+package com.expansel.errai.spring.server.publish;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.RequestDispatcher;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.Resources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.expansel.errai.spring.server.ErraiRequestDispatcherFactoryBean;
+
+/**
+ * <p>Publishes high frequency updates to clients in batches. Values published to a subject, either 
+ * to all clients or to the queue of one client, are collected for the time window and then sent 
+ * as a single message with a List of the values in the {@link MessageParts#Value} part, in the 
+ * order they were published. Client callbacks for these subjects therefore receive lists.</p>
+ * 
+ * <p>With {@link #conflate(String, Object, Object)} only the latest value per key is kept within 
+ * a window, e.g. the last price per instrument, so the list holds at most one value per key.</p>
+ * 
+ * <p>Buffers are bounded: a buffer reaching maxBufferedValues values (or keys) is sent right 
+ * away on the publishing thread, and once maxBuffers subjects and queues are buffering, values 
+ * for others are sent without batching. Empty buffers are removed after a window. Values are 
+ * sent while holding the lock of their buffer, so the messages of a subject and queue keep the 
+ * order the values were published in.</p>
+ * 
+ * <p>Messages go through the RequestDispatcher given or, by default, the one of the Errai bus, 
+ * see {@link ErraiRequestDispatcherFactoryBean}. Messages for one client queue are routed by 
+ * the session of the queue, looked up on the ServerMessageBus when sent, and dropped if the 
+ * queue is gone.</p>
+ *
+ * @author Zach Visagie
+ */
+public class CoalescingPublisher implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingPublisher.class);
+
+    private final RequestDispatcher dispatcher;
+    private final ConcurrentMap<BufferKey, Buffer> buffers = new ConcurrentHashMap<BufferKey, Buffer>();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder publishedValues = new LongAdder();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private volatile ServerMessageBus serverMessageBus;
+    private int maxBufferedValues = 1000;
+    private int maxBuffers = 10000;
+
+    /**
+     * Creates a publisher flushing every 50 milliseconds through the Errai bus RequestDispatcher.
+     */
+    public CoalescingPublisher() {
+        this(null, 50, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param dispatcher the dispatcher to send with or null to use the one of the Errai bus once initialized
+     * @param window how long values are collected before they are sent
+     * @param unit
+     */
+    public CoalescingPublisher(RequestDispatcher dispatcher, long window, TimeUnit unit) {
+        super();
+        this.dispatcher = dispatcher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "errai-coalescing-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, window, window, unit);
+    }
+
+    /**
+     * @param serverMessageBus the bus client queue sessions are looked up on, defaults to the 
+     * Errai bus once initialized
+     */
+    public void setServerMessageBus(ServerMessageBus serverMessageBus) {
+        this.serverMessageBus = serverMessageBus;
+    }
+
+    /**
+     * @param maxBufferedValues the values, or keys when conflating, buffered per subject and queue, defaults to 1000
+     */
+    public void setMaxBufferedValues(int maxBufferedValues) {
+        this.maxBufferedValues = maxBufferedValues;
+    }
+
+    /**
+     * @param maxBuffers the number of subjects and queues buffered at once, defaults to 10000
+     */
+    public void setMaxBuffers(int maxBuffers) {
+        this.maxBuffers = maxBuffers;
+    }
+
+    /**
+     * Publishes a value to all clients subscribed to the subject.
+     * 
+     * @param subject
+     * @param value
+     */
+    public void publish(String subject, Object value) {
+        add(new BufferKey(subject, null, false), null, value);
+    }
+
+    /**
+     * Publishes a value to the subject of one client queue.
+     * 
+     * @param subject
+     * @param queueSessionId the session id of the client queue
+     * @param value
+     */
+    public void publish(String subject, String queueSessionId, Object value) {
+        add(new BufferKey(subject, queueSessionId, false), null, value);
+    }
+
+    /**
+     * Publishes a value to all clients subscribed to the subject, replacing a value with the same 
+     * key not sent yet.
+     * 
+     * @param subject
+     * @param key
+     * @param value
+     */
+    public void conflate(String subject, Object key, Object value) {
+        add(new BufferKey(subject, null, true), key, value);
+    }
+
+    /**
+     * Publishes a value to the subject of one client queue, replacing a value with the same 
+     * key not sent yet.
+     * 
+     * @param subject
+     * @param queueSessionId the session id of the client queue
+     * @param key
+     * @param value
+     */
+    public void conflate(String subject, String queueSessionId, Object key, Object value) {
+        add(new BufferKey(subject, queueSessionId, true), key, value);
+    }
+
+    private void add(BufferKey key, Object valueKey, Object value) {
+        publishedValues.increment();
+        while (true) {
+            Buffer buffer = buffers.get(key);
+            if (buffer == null) {
+                if (buffers.size() >= maxBuffers) {
+                    List<Object> values = new ArrayList<Object>(1);
+                    values.add(value);
+                    send(key, values);
+                    return;
+                }
+                Buffer created = new Buffer(key.conflating);
+                buffer = buffers.putIfAbsent(key, created);
+                if (buffer == null) {
+                    buffer = created;
+                }
+            }
+            synchronized (buffer) {
+                if (buffer.removed) {
+                    continue;
+                }
+                if (buffer.add(valueKey, value) >= maxBufferedValues) {
+                    send(key, buffer.drain());
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Sends all buffered values now, called at the end of every window.
+     */
+    public void flush() {
+        for (Map.Entry<BufferKey, Buffer> entry : buffers.entrySet()) {
+            Buffer buffer = entry.getValue();
+            synchronized (buffer) {
+                List<Object> values = buffer.drain();
+                if (values == null) {
+                    buffer.removed = true;
+                    buffers.remove(entry.getKey(), buffer);
+                } else {
+                    send(entry.getKey(), values);
+                }
+            }
+        }
+    }
+
+    private void send(BufferKey key, List<Object> values) {
+        Message message = CommandMessage.create().toSubject(key.subject).set(MessageParts.Value, values);
+        try {
+            if (key.queueSessionId != null) {
+                // the server bus routes messages to a client queue by the session resource
+                QueueSession session = getServerMessageBus().getSessionBySessionId(key.queueSessionId);
+                if (session == null) {
+                    droppedMessages.increment();
+                    logger.debug("Dropped " + values.size() + " values for " + key + ", the client queue is gone");
+                    return;
+                }
+                message.setResource(Resources.Session.name(), session);
+                getDispatcher().dispatch(message);
+            } else {
+                getDispatcher().dispatchGlobal(message);
+            }
+            sentMessages.increment();
+        } catch (Exception e) {
+            failedMessages.increment();
+            logger.warn("Failed publishing " + values.size() + " values to " + key, e);
+        }
+    }
+
+    private RequestDispatcher getDispatcher() {
+        if (dispatcher != null) {
+            return dispatcher;
+        }
+        return ErraiServiceSingleton.getService().getDispatcher();
+    }
+
+    private ServerMessageBus getServerMessageBus() {
+        ServerMessageBus current = serverMessageBus;
+        if (current != null) {
+            return current;
+        }
+        return ErraiServiceSingleton.getService().getBus();
+    }
+
+    /**
+     * @return the number of values published
+     */
+    public long getPublishedCount() {
+        return publishedValues.sum();
+    }
+
+    /**
+     * @return the number of bus messages the published values were sent in
+     */
+    public long getSentCount() {
+        return sentMessages.sum();
+    }
+
+    public long getFailedCount() {
+        return failedMessages.sum();
+    }
+
+    /**
+     * @return the number of messages not sent as their client queue was gone
+     */
+    public long getDroppedCount() {
+        return droppedMessages.sum();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdown();
+        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        flush();
+    }
+
+    private static class Buffer {
+        private final boolean conflating;
+        private List<Object> values;
+        private Map<Object, Object> latest;
+        private boolean removed;
+
+        Buffer(boolean conflating) {
+            this.conflating = conflating;
+        }
+
+        int add(Object key, Object value) {
+            if (conflating) {
+                if (latest == null) {
+                    latest = new LinkedHashMap<Object, Object>();
+                }
+                latest.put(key, value);
+                return latest.size();
+            }
+            if (values == null) {
+                values = new ArrayList<Object>();
+            }
+            values.add(value);
+            return values.size();
+        }
+
+        /**
+         * @return the buffered values or null if empty
+         */
+        List<Object> drain() {
+            List<Object> result = null;
+            if (conflating) {
+                if (latest != null) {
+                    result = new ArrayList<Object>(latest.values());
+                    latest = null;
+                }
+            } else {
+                result = values;
+                values = null;
+            }
+            return result;
+        }
+    }
+
+    private static class BufferKey {
+        private final String subject;
+        private final String queueSessionId;
+        private final boolean conflating;
+
+        BufferKey(String subject, String queueSessionId, boolean conflating) {
+            this.subject = subject;
+            this.queueSessionId = queueSessionId;
+            this.conflating = conflating;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = subject.hashCode();
+            result = 31 * result + (queueSessionId == null ? 0 : queueSessionId.hashCode());
+            return 31 * result + (conflating ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BufferKey)) {
+                return false;
+            }
+            BufferKey other = (BufferKey) obj;
+            return conflating == other.conflating && subject.equals(other.subject)
+                    && (queueSessionId == null ? other.queueSessionId == null : queueSessionId.equals(other.queueSessionId));
+        }
+
+        @Override
+        public String toString() {
+            return queueSessionId == null ? subject : subject + "@" + queueSessionId;
+        }
+    }
+}
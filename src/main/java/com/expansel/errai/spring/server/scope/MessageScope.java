@@ -0,0 +1,172 @@
+package com.expansel.errai.spring.server.scope;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.Scope;
+
+import com.expansel.errai.spring.server.ErraiApplicationListener;
+
+/**
+ * <p>Spring {@link Scope} bound to the dispatch of a single Errai message. Beans in this scope 
+ * are created on first use while a message callback runs and destroyed when it returns, on 
+ * whichever thread the message is delivered, with or without an HTTP request. Use 
+ * {@link MessageScoped} or <code>&#64;Scope(MessageScope.SCOPE_NAME)</code>.</p>
+ * 
+ * <p>Instances are kept in a ThreadLocal, so they are not available to work handed off to 
+ * other threads. The {@link ErraiApplicationListener} registers the scope and binds it around 
+ * every service callback with a {@link MessageScopeMessageCallbackWrapper}. Dispatches may 
+ * nest, e.g. a service sending to a local service, each getting its own instances.</p>
+ * 
+ * <p>The contextual object <code>message</code> resolves to the message being dispatched.</p>
+ *
+ * @author Zach Visagie
+ */
+public class MessageScope implements Scope {
+    private static final Logger logger = LoggerFactory.getLogger(MessageScope.class);
+    public static final String SCOPE_NAME = "errai-message";
+    public static final String MESSAGE_REFERENCE = "message";
+
+    private static final ThreadLocal<Context> CURRENT = new ThreadLocal<Context>();
+
+    /**
+     * Binds a new scope for the message to the current thread, it must be ended with 
+     * {@link #end(Context)} on the same thread.
+     * 
+     * @param message
+     * @return the context bound
+     */
+    public static Context begin(Message message) {
+        Context context = new Context(message, CURRENT.get());
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Destroys the beans of the context and restores the scope it was begun in.
+     * 
+     * @param context
+     */
+    public static void end(Context context) {
+        try {
+            context.destroy();
+        } finally {
+            if (context.parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(context.parent);
+            }
+        }
+    }
+
+    /**
+     * @return the message being dispatched on this thread or null
+     */
+    public static Message getCurrentMessage() {
+        Context context = CURRENT.get();
+        return context == null ? null : context.message;
+    }
+
+    static Context currentContext() {
+        Context context = CURRENT.get();
+        if (context == null) {
+            throw new IllegalStateException("No Errai message is being dispatched on this thread, " 
+                    + SCOPE_NAME + " scoped beans are only available in message callbacks");
+        }
+        return context;
+    }
+
+    @Override
+    public Object get(String name, ObjectFactory<?> objectFactory) {
+        Context context = currentContext();
+        Object bean = context.beans().get(name);
+        if (bean == null) {
+            bean = objectFactory.getObject();
+            context.beans().put(name, bean);
+        }
+        return bean;
+    }
+
+    @Override
+    public Object remove(String name) {
+        Context context = CURRENT.get();
+        if (context == null) {
+            return null;
+        }
+        if (context.destructionCallbacks != null) {
+            context.destructionCallbacks.remove(name);
+        }
+        return context.beans == null ? null : context.beans.remove(name);
+    }
+
+    @Override
+    public void registerDestructionCallback(String name, Runnable callback) {
+        currentContext().destructionCallbacks().put(name, callback);
+    }
+
+    @Override
+    public Object resolveContextualObject(String key) {
+        return MESSAGE_REFERENCE.equals(key) ? getCurrentMessage() : null;
+    }
+
+    @Override
+    public String getConversationId() {
+        Context context = CURRENT.get();
+        return context == null ? null : Integer.toHexString(System.identityHashCode(context));
+    }
+
+    /**
+     * The beans of one message dispatch. Maps are only allocated when a bean is used.
+     */
+    public static final class Context {
+        private final Message message;
+        private final Context parent;
+        private Map<String, Object> beans;
+        private Map<String, Runnable> destructionCallbacks;
+
+        private Context(Message message, Context parent) {
+            this.message = message;
+            this.parent = parent;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        private Map<String, Object> beans() {
+            if (beans == null) {
+                beans = new LinkedHashMap<String, Object>(4);
+            }
+            return beans;
+        }
+
+        private Map<String, Runnable> destructionCallbacks() {
+            if (destructionCallbacks == null) {
+                destructionCallbacks = new LinkedHashMap<String, Runnable>(4);
+            }
+            return destructionCallbacks;
+        }
+
+        private void destroy() {
+            if (destructionCallbacks != null) {
+                // destroy in reverse order of creation, like singletons
+                List<Map.Entry<String, Runnable>> callbacks = new ArrayList<Map.Entry<String, Runnable>>(destructionCallbacks.entrySet());
+                for (int i = callbacks.size() - 1; i >= 0; i--) {
+                    try {
+                        callbacks.get(i).getValue().run();
+                    } catch (RuntimeException e) {
+                        logger.warn("Destruction of " + SCOPE_NAME + " scoped bean " + callbacks.get(i).getKey() + " failed", e);
+                    }
+                }
+                destructionCallbacks = null;
+            }
+            beans = null;
+        }
+    }
+}
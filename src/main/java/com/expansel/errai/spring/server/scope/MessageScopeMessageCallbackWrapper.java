@@ -0,0 +1,44 @@
+package com.expansel.errai.spring.server.scope;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+import com.expansel.errai.spring.server.InterceptingMessageCallbackWrapper;
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
+
+/**
+ * <p>Binds a {@link MessageScope} around each callback. The {@link com.expansel.errai.spring.server.ErraiApplicationListener} 
+ * applies it as the innermost wrapper, so the scope is bound on the thread that runs the service, 
+ * also when an executor wrapper hands the message to another thread.</p>
+ *
+ * @author Zach Visagie
+ */
+public class MessageScopeMessageCallbackWrapper implements InterceptingMessageCallbackWrapper {
+    private static final MessageCallbackInterceptor INTERCEPTOR = new MessageCallbackInterceptor() {
+        @Override
+        public long before(Message message) {
+            MessageScope.begin(message);
+            return 0;
+        }
+
+        @Override
+        public void after(Message message, long token) {
+            MessageScope.end(MessageScope.currentContext());
+        }
+
+        @Override
+        public Throwable onError(Message message, Throwable error, long token) {
+            MessageScope.end(MessageScope.currentContext());
+            return error;
+        }
+    };
+
+    @Override
+    public MessageCallbackInterceptor createInterceptor(String subject, String endpoint) {
+        return INTERCEPTOR;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageScopeMessageCallbackWrapper";
+    }
+}
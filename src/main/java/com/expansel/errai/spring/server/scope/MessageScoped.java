@@ -0,0 +1,27 @@
+package com.expansel.errai.spring.server.scope;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.annotation.ScopedProxyMode;
+import org.springframework.core.annotation.AliasFor;
+
+/**
+ * Places a bean in the {@link MessageScope}, by default behind a class based scoped proxy 
+ * like Spring's <code>&#64;RequestScope</code>.
+ *
+ * @author Zach Visagie
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Scope(MessageScope.SCOPE_NAME)
+public @interface MessageScoped {
+
+    @AliasFor(annotation = Scope.class)
+    ScopedProxyMode proxyMode() default ScopedProxyMode.TARGET_CLASS;
+}
@@ -0,0 +1,51 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The identity carried by a token of the {@link AuthenticationTokenCodec}.
+ *
+ * @author Zach Visagie
+ */
+public class AuthenticationTokenClaims {
+    private final String username;
+    private final List<String> roles;
+    private final long expiresAt;
+
+    public AuthenticationTokenClaims(String username, Collection<String> roles, long expiresAt) {
+        super();
+        this.username = username;
+        this.roles = Collections.unmodifiableList(new ArrayList<String>(roles));
+        this.expiresAt = expiresAt;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the names of the granted authorities
+     */
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * @return the expiry time in milliseconds since the epoch
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "AuthenticationTokenClaims [username=" + username + ", roles=" + roles + ", expiresAt=" + expiresAt + "]";
+    }
+}
@@ -0,0 +1,177 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.expansel.errai.spring.server.cache.BoundedExpiringCache;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * <p>Creates and verifies compact signed authentication tokens: URL safe base64 JSON claims
+ * followed by an HMAC signature, see {@link HmacTokenSigner}. Any node sharing the secret 
+ * can verify a token.</p>
+ * 
+ * <p>Verified tokens are kept in a bounded cache so repeated requests with the same token 
+ * skip parsing and the signature check. Tokens can not be revoked before they expire, 
+ * so keep the validity short.</p>
+ *
+ * @author Zach Visagie
+ */
+public class AuthenticationTokenCodec {
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationTokenCodec.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final char SEPARATOR = '.';
+
+    private final HmacTokenSigner signer;
+    private final BoundedExpiringCache<String, AuthenticationTokenClaims> verifiedTokens;
+    private long tokenValidityMillis = 30 * 60 * 1000L;
+
+    /**
+     * @param secret at least 32 bytes of random data, shared by all nodes
+     */
+    public AuthenticationTokenCodec(byte[] secret) {
+        this(new HmacTokenSigner(secret), 10000, 5, TimeUnit.MINUTES);
+    }
+
+    /**
+     * @param signer
+     * @param cacheSize the maximum number of verified tokens to cache
+     * @param cacheTimeToLive how long a verification is cached, never beyond the token expiry
+     * @param unit
+     */
+    public AuthenticationTokenCodec(HmacTokenSigner signer, int cacheSize, long cacheTimeToLive, TimeUnit unit) {
+        super();
+        this.signer = Assert.notNull(signer);
+        this.verifiedTokens = new BoundedExpiringCache<String, AuthenticationTokenClaims>(cacheSize, cacheTimeToLive, unit);
+    }
+
+    /**
+     * @param username
+     * @param roles
+     * @return a token valid for the configured time
+     */
+    public String createToken(String username, Collection<String> roles) {
+        return createToken(new AuthenticationTokenClaims(username, roles, System.currentTimeMillis() + tokenValidityMillis));
+    }
+
+    public String createToken(AuthenticationTokenClaims claims) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = jsonFactory.createGenerator(json)) {
+            generator.writeStartObject();
+            generator.writeStringField("sub", claims.getUsername());
+            generator.writeNumberField("exp", claims.getExpiresAt());
+            generator.writeArrayFieldStart("roles");
+            for (String role : claims.getRoles()) {
+                generator.writeString(role);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write token claims", e);
+        }
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(json.toByteArray());
+        return payload + SEPARATOR + signer.sign(payload);
+    }
+
+    /**
+     * @param token
+     * @return the claims or null if the token is invalid or expired
+     */
+    public AuthenticationTokenClaims verify(String token) {
+        if (token == null) {
+            return null;
+        }
+        AuthenticationTokenClaims claims = verifiedTokens.get(token);
+        if (claims == null) {
+            claims = parse(token);
+            if (claims == null) {
+                return null;
+            }
+            verifiedTokens.put(token, claims);
+        }
+        if (claims.isExpired()) {
+            verifiedTokens.remove(token);
+            return null;
+        }
+        return claims;
+    }
+
+    /**
+     * Removes a token from the verification cache, it is still valid when presented again.
+     * 
+     * @param token
+     */
+    public void evict(String token) {
+        verifiedTokens.remove(token);
+    }
+
+    private AuthenticationTokenClaims parse(String token) {
+        int separator = token.lastIndexOf(SEPARATOR);
+        if (separator <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, separator);
+        if (!signer.verify(payload, token.substring(separator + 1))) {
+            logger.debug("Invalid authentication token signature");
+            return null;
+        }
+        String username = null;
+        long expiresAt = 0;
+        List<String> roles = new ArrayList<String>();
+        try (JsonParser parser = jsonFactory.createParser(Base64.getUrlDecoder().decode(payload))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("sub".equals(field)) {
+                    username = parser.getValueAsString();
+                } else if ("exp".equals(field)) {
+                    expiresAt = parser.getLongValue();
+                } else if ("roles".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.VALUE_STRING) {
+                        roles.add(parser.getText());
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Could not read authentication token", e);
+            return null;
+        }
+        if (username == null) {
+            return null;
+        }
+        return new AuthenticationTokenClaims(username, roles, expiresAt);
+    }
+
+    /**
+     * How long created tokens are valid, defaults to 30 minutes.
+     * 
+     * @param tokenValiditySeconds
+     */
+    public void setTokenValiditySeconds(int tokenValiditySeconds) {
+        if (tokenValiditySeconds <= 0) {
+            throw new IllegalArgumentException("Token validity must be positive");
+        }
+        this.tokenValidityMillis = tokenValiditySeconds * 1000L;
+    }
+
+    public long getTokenValidityMillis() {
+        return tokenValidityMillis;
+    }
+}
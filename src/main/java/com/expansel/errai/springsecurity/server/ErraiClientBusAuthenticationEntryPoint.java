@@ -1,13 +1,12 @@
 package com.expansel.errai.springsecurity.server;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.jboss.errai.marshalling.server.ServerMarshalling;
+import org.jboss.errai.common.client.api.Assert;
 import org.jboss.errai.security.shared.exception.UnauthenticatedException;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
@@ -37,22 +36,28 @@ import org.springframework.security.web.AuthenticationEntryPoint;
  *               restClientMatcher);
  * </pre>
  * 
+ * <p>
+ * The response is written by {@link ErraiSecurityErrorResponses}.
+ * </p>
+ * 
  * @author Zach Visagie
  */
 public class ErraiClientBusAuthenticationEntryPoint implements AuthenticationEntryPoint {
+    private final ErraiSecurityErrorResponses responses;
+
+    public ErraiClientBusAuthenticationEntryPoint() {
+        this(ErraiSecurityErrorResponses.getDefault());
+    }
+
+    public ErraiClientBusAuthenticationEntryPoint(ErraiSecurityErrorResponses responses) {
+        super();
+        this.responses = Assert.notNull(responses);
+    }
 
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response,
             AuthenticationException authException) throws IOException, ServletException {
-        String errorMsg = authException.getMessage() == null ? "" : authException.getMessage();
-        String throwable = ServerMarshalling.toJSON(new UnauthenticatedException());
-        String body = "[{\"ErrorTo\":\"ClientBusErrors\", \"ToSubject\":\"ClientBusErrors\", \"Throwable\":" + throwable + ", \"ErrorMessage\":\"" + errorMsg + "\"}]";
-        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        response.setContentType("application/json");
-        PrintWriter out = response.getWriter();
-        out.print(body);
-        out.flush();
-        out.close();
+        responses.writeClientBusUnauthenticated(response, HttpServletResponse.SC_UNAUTHORIZED, authException.getMessage());
     }
 
 }
\ No newline at end of file
@@ -3,7 +3,8 @@ package com.expansel.errai.springsecurity.server;
 import org.jboss.errai.bus.server.servlet.CSRFTokenCheck;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.web.access.AccessDeniedHandlerImpl;
-import org.springframework.security.web.csrf.InvalidCsrfTokenException;
+import org.springframework.security.web.csrf.CsrfException;
+import org.springframework.security.web.csrf.CsrfToken;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -14,6 +15,10 @@ import java.io.IOException;
 import static org.jboss.errai.common.client.framework.Constants.ERRAI_CSRF_TOKEN_HEADER;
 
 /**
+ * <p>Sets the Errai CSRF token header so the client can retry with the current token. The
+ * token is taken from the request, where the Spring CsrfFilter puts the token of its 
+ * repository, or else from the session as Errai stores it.</p>
+ * 
  * @author Ben Dol
  */
 public class ErraiCsrfAccessDeniedHandler extends AccessDeniedHandlerImpl {
@@ -23,16 +28,23 @@ public class ErraiCsrfAccessDeniedHandler extends AccessDeniedHandlerImpl {
                        HttpServletResponse response,
                        AccessDeniedException accessDeniedException) throws IOException, ServletException {
         // When missing or providing an invalid CSRF token we will prompt a challenge.
-        if (accessDeniedException instanceof InvalidCsrfTokenException) {
-            final HttpSession session = request.getSession(false);
-            if (session == null) {
-                throw new IllegalStateException("Cannot create CSRF token challenge when session is null.");
-            }
-
-            final String token = (String) session.getAttribute(CSRFTokenCheck.CSRF_TOKEN_ATTRIBUTE_NAME);
-            response.setHeader(ERRAI_CSRF_TOKEN_HEADER, token);
+        // Stateless tokens that are expired or invalid are reported as missing.
+        if (accessDeniedException instanceof CsrfException) {
+            response.setHeader(ERRAI_CSRF_TOKEN_HEADER, getToken(request));
         }
 
         super.handle(request, response, accessDeniedException);
     }
+
+    private String getToken(HttpServletRequest request) {
+        final CsrfToken csrfToken = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+        if (csrfToken != null) {
+            return csrfToken.getToken();
+        }
+        final HttpSession session = request.getSession(false);
+        if (session == null) {
+            throw new IllegalStateException("Cannot create CSRF token challenge when session is null.");
+        }
+        return (String) session.getAttribute(CSRFTokenCheck.CSRF_TOKEN_ATTRIBUTE_NAME);
+    }
 }
@@ -1,13 +1,12 @@
 package com.expansel.errai.springsecurity.server;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.jboss.errai.marshalling.server.ServerMarshalling;
+import org.jboss.errai.common.client.api.Assert;
 import org.jboss.errai.security.shared.exception.UnauthenticatedException;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.web.AuthenticationEntryPoint;
@@ -37,22 +36,30 @@ import org.springframework.security.web.AuthenticationEntryPoint;
  *               restClientMatcher);
  * </pre>
  * 
+ * <p>
+ * The response is written by {@link ErraiSecurityErrorResponses}.
+ * </p>
+ * 
  * @author Zach Visagie
  */
 public class ErraiRestClientAuthenticationEntryPoint implements AuthenticationEntryPoint {
+    private final ErraiSecurityErrorResponses responses;
+
+    public ErraiRestClientAuthenticationEntryPoint() {
+        this(ErraiSecurityErrorResponses.getDefault());
+    }
+
+    public ErraiRestClientAuthenticationEntryPoint(ErraiSecurityErrorResponses responses) {
+        super();
+        this.responses = Assert.notNull(responses);
+    }
 
     @Override
     public void commence(HttpServletRequest request, HttpServletResponse response,
             AuthenticationException authException) throws IOException, ServletException {
-        String body = ServerMarshalling.toJSON(new UnauthenticatedException());
         // ideally we send SC_UNAUTHORIZED for Unauthenticated but it seems the client 
         // side only treats 403 as a SecurityException at the moment
-        response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-        response.setContentType("application/json");
-        PrintWriter out = response.getWriter();
-        out.print(body);
-        out.flush();
-        out.close();
+        responses.writeUnauthenticated(response, HttpServletResponse.SC_FORBIDDEN);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.errai.marshalling.server.ServerMarshalling;
+import org.jboss.errai.security.shared.exception.UnauthenticatedException;
+
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+
+/**
+ * <p>Writes the JSON responses the Errai client bus and rest client expect for security 
+ * errors. The marshalled Errai exception is created once, on first use, and responses are 
+ * written as UTF-8 bytes with a Content-Length through the response OutputStream. The 
+ * error message of client bus responses is escaped with the Jackson streaming API, using 
+ * the encoder {@link BufferRecyclers} keeps per thread.</p>
+ * 
+ * <p>The authentication entry points share {@link #getDefault()} unless given an instance.</p>
+ *
+ * @author Zach Visagie
+ */
+public class ErraiSecurityErrorResponses {
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+    private static final byte[] CLIENT_BUS_ERROR_SUFFIX = "\"}]".getBytes(StandardCharsets.UTF_8);
+
+    private static final ErraiSecurityErrorResponses DEFAULT = new ErraiSecurityErrorResponses();
+
+    private volatile byte[] unauthenticatedJson;
+    private volatile byte[] clientBusErrorPrefix;
+
+    /**
+     * @return the instance shared by the entry points
+     */
+    public static ErraiSecurityErrorResponses getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Writes a client bus error message carrying an Errai {@link UnauthenticatedException}.
+     * 
+     * @param response
+     * @param status
+     * @param errorMessage the error message or null
+     * @throws IOException
+     */
+    public void writeClientBusUnauthenticated(HttpServletResponse response, int status, String errorMessage)
+            throws IOException {
+        byte[] prefix = getClientBusErrorPrefix();
+        byte[] message = errorMessage == null || errorMessage.isEmpty() ? null
+                : BufferRecyclers.quoteAsJsonUTF8(errorMessage);
+        int messageLength = message == null ? 0 : message.length;
+        prepare(response, status, prefix.length + messageLength + CLIENT_BUS_ERROR_SUFFIX.length);
+        OutputStream out = response.getOutputStream();
+        out.write(prefix);
+        if (message != null) {
+            out.write(message);
+        }
+        out.write(CLIENT_BUS_ERROR_SUFFIX);
+        out.flush();
+    }
+
+    /**
+     * Writes the marshalled Errai {@link UnauthenticatedException} as the body, which is 
+     * what the rest client expects.
+     * 
+     * @param response
+     * @param status
+     * @throws IOException
+     */
+    public void writeUnauthenticated(HttpServletResponse response, int status) throws IOException {
+        byte[] body = getUnauthenticatedJson();
+        prepare(response, status, body.length);
+        OutputStream out = response.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+
+    private void prepare(HttpServletResponse response, int status, int contentLength) {
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(contentLength);
+    }
+
+    private byte[] getUnauthenticatedJson() {
+        byte[] json = unauthenticatedJson;
+        if (json == null) {
+            // marshalling needs the Errai mapping context so it is done on first use,
+            // concurrent first calls create the same bytes
+            json = ServerMarshalling.toJSON(new UnauthenticatedException()).getBytes(StandardCharsets.UTF_8);
+            unauthenticatedJson = json;
+        }
+        return json;
+    }
+
+    private byte[] getClientBusErrorPrefix() {
+        byte[] prefix = clientBusErrorPrefix;
+        if (prefix == null) {
+            String throwable = new String(getUnauthenticatedJson(), StandardCharsets.UTF_8);
+            prefix = ("[{\"ErrorTo\":\"ClientBusErrors\", \"ToSubject\":\"ClientBusErrors\", \"Throwable\":" + throwable
+                    + ", \"ErrorMessage\":\"").getBytes(StandardCharsets.UTF_8);
+            clientBusErrorPrefix = prefix;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,86 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.jboss.errai.common.client.api.Assert;
+
+/**
+ * <p>Signs and verifies token payloads with HMAC-SHA256 so any node sharing the secret can
+ * check a token without server side state. Signatures are URL safe base64 without padding
+ * and are compared in constant time.</p>
+ *
+ * @author Zach Visagie
+ */
+public class HmacTokenSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            return createMac();
+        }
+    };
+
+    /**
+     * @param secret at least 32 bytes of random data, shared by all nodes
+     */
+    public HmacTokenSigner(byte[] secret) {
+        super();
+        Assert.notNull(secret);
+        if (secret.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("The secret must be at least " + MIN_SECRET_LENGTH + " bytes");
+        }
+        this.key = new SecretKeySpec(secret.clone(), ALGORITHM);
+        // fail early if the algorithm is not available
+        createMac();
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create " + ALGORITHM, e);
+        }
+    }
+
+    /**
+     * @param payload
+     * @return the signature of the payload
+     */
+    public String sign(String payload) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac(payload));
+    }
+
+    /**
+     * @param payload
+     * @param signature
+     * @return true if the signature was created by {@link #sign(String)} for the payload
+     */
+    public boolean verify(String payload, String signature) {
+        if (payload == null || signature == null) {
+            return false;
+        }
+        byte[] actual;
+        try {
+            actual = Base64.getUrlDecoder().decode(signature);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(mac(payload), actual);
+    }
+
+    private byte[] mac(String payload) {
+        Mac mac = macs.get();
+        return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,271 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.ServletRequest;
+
+import org.jboss.errai.bus.server.api.RpcContext;
+import org.jboss.errai.security.shared.exception.FailedAuthenticationException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * <p>Limits login attempts with token buckets per username and optionally per client address,
+ * checked before the AuthenticationManager so rejected attempts never reach password hashing.</p>
+ * 
+ * <p>Buckets are immutable and kept in fixed size lock free tables updated with compare and 
+ * set, so memory is bounded. Each key has two candidate slots picked with SipHash under a 
+ * random key per table, so keys that collide in a slot cannot be chosen in advance the way 
+ * String.hashCode() collisions can. A new key only replaces a bucket that has refilled 
+ * completely, which holds no throttling state. When both slots hold buckets still refilling
+ * the new key is rejected, so the table must be sized for the keys attempting to log in 
+ * within the refill time of a bucket.</p>
+ * 
+ * <p>Used by the authentication services when set with setLoginThrottle(), e.g.</p>
+ * <pre>
+ * LoginThrottle throttle = new LoginThrottle(4096);
+ * throttle.setUsernameLimit(5, 0.2); // burst of 5, then one attempt every 5 seconds
+ * authenticationService.setLoginThrottle(throttle);
+ * </pre>
+ * 
+ * <p>The limit per client address is off by default, as users behind a NAT or proxy share 
+ * an address and would lock each other out. It is turned on with 
+ * {@link #setAddressLimit(int, double)}. The address is the remote address of the request, 
+ * behind a reverse proxy that is the address of the proxy. The X-Forwarded-For header is not
+ * read as clients can set it to anything, the container should be configured to take the 
+ * client address from it only when set by a trusted proxy, e.g. the Tomcat RemoteIpValve, or
+ * {@link #getClientAddress()} overridden.</p>
+ *
+ * @author Zach Visagie
+ */
+public class LoginThrottle {
+    private static final String UNKNOWN_ADDRESS = "unknown";
+
+    private final int tableSize;
+    private final BucketTable usernameBuckets;
+    private volatile BucketTable addressBuckets;
+    private final LongAdder rejected = new LongAdder();
+    private final FailedAuthenticationException rejection = 
+            SecurityExceptionMappingRegistry.stackless(new FailedAuthenticationException("Too many login attempts"));
+
+    /**
+     * @param tableSize the number of buckets kept for usernames and for addresses, rounded 
+     * up to a power of two
+     */
+    public LoginThrottle(int tableSize) {
+        super();
+        this.tableSize = tableSize;
+        this.usernameBuckets = new BucketTable(tableSize, 10, 0.5);
+    }
+
+    /**
+     * Throws an Errai {@link FailedAuthenticationException} if there are too many attempts for
+     * the username or, when limited, the address of the current request.
+     * 
+     * @param username
+     */
+    public void checkLoginAttempt(String username) {
+        if (!tryAcquire(username, getClientAddress())) {
+            throw rejection;
+        }
+    }
+
+    /**
+     * Takes a token from the buckets of the username and, when limited, the address.
+     * 
+     * @param username
+     * @param address
+     * @return false if either bucket is empty, or there is no slot for a new key
+     */
+    public boolean tryAcquire(String username, String address) {
+        long now = System.nanoTime();
+        BucketTable addressBuckets = this.addressBuckets;
+        if ((addressBuckets == null || addressBuckets.tryAcquire(address == null ? UNKNOWN_ADDRESS : address, now))
+                && usernameBuckets.tryAcquire(username == null ? "" : username, now)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * @return the client address from the current Errai RPC call or Spring request, may be null
+     */
+    protected String getClientAddress() {
+        ServletRequest request = null;
+        if (RpcContext.getMessage() != null) {
+            request = RpcContext.getServletRequest();
+        }
+        if (request == null) {
+            RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+            if (attributes instanceof ServletRequestAttributes) {
+                request = ((ServletRequestAttributes) attributes).getRequest();
+            }
+        }
+        return request == null ? null : request.getRemoteAddr();
+    }
+
+    /**
+     * @param burst the attempts allowed at once per username, defaults to 10
+     * @param perSecond the rate attempts are allowed at after that, defaults to 0.5
+     */
+    public void setUsernameLimit(int burst, double perSecond) {
+        usernameBuckets.setLimit(burst, perSecond);
+    }
+
+    /**
+     * Turns on the limit per client address, which is off by default. Set it well above the 
+     * username limit, e.g. a burst of 50 at 5 per second, if many users share an address.
+     * 
+     * @param burst the attempts allowed at once per client address
+     * @param perSecond the rate attempts are allowed at after that
+     */
+    public synchronized void setAddressLimit(int burst, double perSecond) {
+        if (addressBuckets == null) {
+            addressBuckets = new BucketTable(tableSize, burst, perSecond);
+        } else {
+            addressBuckets.setLimit(burst, perSecond);
+        }
+    }
+
+    public boolean isAddressLimited() {
+        return addressBuckets != null;
+    }
+
+    /**
+     * @return the number of rejected attempts
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private static final class Bucket {
+        final String key;
+        final double tokens;
+        final long updated;
+
+        Bucket(String key, double tokens, long updated) {
+            this.key = key;
+            this.tokens = tokens;
+            this.updated = updated;
+        }
+    }
+
+    private static final class BucketTable {
+        private final AtomicReferenceArray<Bucket> buckets;
+        private final int mask;
+        private final long k0;
+        private final long k1;
+        private volatile double capacity;
+        private volatile double tokensPerNano;
+
+        BucketTable(int size, int burst, double perSecond) {
+            int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+            this.buckets = new AtomicReferenceArray<Bucket>(capacity);
+            this.mask = capacity - 1;
+            SecureRandom random = new SecureRandom();
+            this.k0 = random.nextLong();
+            this.k1 = random.nextLong();
+            setLimit(burst, perSecond);
+        }
+
+        void setLimit(int burst, double perSecond) {
+            if (burst < 1 || perSecond <= 0) {
+                throw new IllegalArgumentException("Burst and rate must be positive");
+            }
+            this.capacity = burst;
+            this.tokensPerNano = perSecond / 1e9;
+        }
+
+        boolean tryAcquire(String key, long now) {
+            long hash = sipHash(k0, k1, key);
+            int first = (int) hash & mask;
+            int second = (int) (hash >>> 32) & mask;
+            while (true) {
+                Bucket a = buckets.get(first);
+                Bucket b = buckets.get(second);
+                int slot;
+                Bucket current;
+                if (a != null && a.key.equals(key)) {
+                    slot = first;
+                    current = a;
+                } else if (b != null && b.key.equals(key)) {
+                    slot = second;
+                    current = b;
+                } else {
+                    // new key, take a free slot or a full bucket, which is the same as a new 
+                    // one, a bucket still refilling is never evicted as that would reset its key
+                    if (a == null || (b != null && available(a, now) >= capacity)) {
+                        slot = first;
+                        current = a;
+                    } else if (b == null || available(b, now) >= capacity) {
+                        slot = second;
+                        current = b;
+                    } else {
+                        return false;
+                    }
+                    if (buckets.compareAndSet(slot, current, new Bucket(key, capacity - 1, now))) {
+                        return true;
+                    }
+                    continue;
+                }
+                double tokens = available(current, now);
+                if (tokens < 1) {
+                    return false;
+                }
+                if (buckets.compareAndSet(slot, current, new Bucket(key, tokens - 1, now))) {
+                    return true;
+                }
+            }
+        }
+
+        private double available(Bucket bucket, long now) {
+            return Math.min(capacity, bucket.tokens + (now - bucket.updated) * tokensPerNano);
+        }
+
+        /**
+         * SipHash-2-4 of the UTF-16LE encoding of the key, read four chars at a time.
+         */
+        static long sipHash(long k0, long k1, String key) {
+            long v0 = 0x736f6d6570736575L ^ k0;
+            long v1 = 0x646f72616e646f6dL ^ k1;
+            long v2 = 0x6c7967656e657261L ^ k0;
+            long v3 = 0x7465646279746573L ^ k1;
+            int length = key.length();
+            int blocks = length / 4 + 1;
+            for (int block = 0; block < blocks; block++) {
+                int offset = block * 4;
+                long m;
+                if (block < blocks - 1) {
+                    m = key.charAt(offset) | (long) key.charAt(offset + 1) << 16
+                            | (long) key.charAt(offset + 2) << 32 | (long) key.charAt(offset + 3) << 48;
+                } else {
+                    // the last block holds the remaining chars and the length in bytes
+                    m = (long) (length * 2) << 56;
+                    for (int i = offset; i < length; i++) {
+                        m |= (long) key.charAt(i) << ((i - offset) * 16);
+                    }
+                }
+                v3 ^= m;
+                for (int round = 0; round < 2; round++) {
+                    v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                    v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                    v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                    v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+                }
+                v0 ^= m;
+            }
+            v2 ^= 0xff;
+            for (int round = 0; round < 4; round++) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            return v0 ^ v1 ^ v2 ^ v3;
+        }
+    }
+}
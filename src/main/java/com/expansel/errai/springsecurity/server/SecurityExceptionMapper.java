@@ -0,0 +1,16 @@
+package com.expansel.errai.springsecurity.server;
+
+/**
+ * <p>Maps an exception thrown by a bus service to an exception the bus can send to the 
+ * client, registered with a {@link SecurityExceptionMappingRegistry}.</p>
+ *
+ * @author Zach Visagie
+ */
+public interface SecurityExceptionMapper {
+
+    /**
+     * @param exception an exception of the type the mapper was registered for
+     * @return the exception to throw instead or null to leave the exception unmapped
+     */
+    public RuntimeException map(Throwable exception);
+}
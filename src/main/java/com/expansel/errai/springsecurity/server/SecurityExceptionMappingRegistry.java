@@ -0,0 +1,136 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.security.shared.exception.UnauthenticatedException;
+import org.jboss.errai.security.shared.exception.UnauthorizedException;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.AuthenticationException;
+
+/**
+ * <p>Type indexed {@link SecurityExceptionMapper}s used by the {@link SpringSecurityMessageCallback}.
+ * The mapper of the most specific registered super class is used and the result of that 
+ * lookup is cached per exception class, so mapping an exception costs a map lookup for each
+ * exception in its cause chain.</p>
+ * 
+ * <p>By default a Spring {@link AuthenticationException} is mapped to an Errai 
+ * {@link UnauthenticatedException} and an {@link AccessDeniedException} to an 
+ * {@link UnauthorizedException}. Further mappings can be registered, e.g.</p>
+ * <pre>
+ * registry.register(AccountExpiredException.class, e -&gt; new UnauthenticatedException("expired"));
+ * </pre>
+ * 
+ * <p>With {@link #setPreallocatedExceptions(boolean)} the default mappings throw shared 
+ * instances without a stack trace, which keeps floods of unauthorized calls cheap but means
+ * the exceptions can not be told apart on the server. Sharing is safe as they are only 
+ * marshalled to the client, which leaves out suppressed exceptions. They are the Errai types
+ * themselves rather than stackless subclasses, which would marshal as a plain 
+ * RuntimeException.</p>
+ *
+ * @author Zach Visagie
+ */
+public class SecurityExceptionMappingRegistry {
+    private static final SecurityExceptionMapper NO_MAPPER = new SecurityExceptionMapper() {
+        @Override
+        public RuntimeException map(Throwable exception) {
+            return null;
+        }
+    };
+    private static final StackTraceElement[] NO_STACK_TRACE = new StackTraceElement[0];
+
+    private final Map<Class<?>, SecurityExceptionMapper> mappers = new ConcurrentHashMap<Class<?>, SecurityExceptionMapper>();
+    private final Map<Class<?>, SecurityExceptionMapper> resolved = new ConcurrentHashMap<Class<?>, SecurityExceptionMapper>();
+    private final UnauthenticatedException preallocatedUnauthenticated = stackless(new UnauthenticatedException());
+    private final UnauthorizedException preallocatedUnauthorized = stackless(new UnauthorizedException());
+    private volatile boolean preallocatedExceptions;
+
+    public SecurityExceptionMappingRegistry() {
+        super();
+        register(AuthenticationException.class, new SecurityExceptionMapper() {
+            @Override
+            public RuntimeException map(Throwable exception) {
+                return preallocatedExceptions ? preallocatedUnauthenticated : new UnauthenticatedException();
+            }
+        });
+        register(AccessDeniedException.class, new SecurityExceptionMapper() {
+            @Override
+            public RuntimeException map(Throwable exception) {
+                return preallocatedExceptions ? preallocatedUnauthorized : new UnauthorizedException();
+            }
+        });
+    }
+
+    /**
+     * Registers a mapper for an exception type and its subclasses, replacing any mapper 
+     * registered for the same type.
+     * 
+     * @param exceptionType
+     * @param mapper
+     */
+    public void register(Class<? extends Throwable> exceptionType, SecurityExceptionMapper mapper) {
+        mappers.put(Assert.notNull(exceptionType), Assert.notNull(mapper));
+        resolved.clear();
+    }
+
+    /**
+     * Removes the mapper registered for exactly this type, e.g. to turn off a default mapping.
+     * 
+     * @param exceptionType
+     */
+    public void unregister(Class<? extends Throwable> exceptionType) {
+        mappers.remove(exceptionType);
+        resolved.clear();
+    }
+
+    /**
+     * @param exception
+     * @return the mapped exception or null if there is no mapping for the type of the exception
+     */
+    public RuntimeException map(Throwable exception) {
+        Class<?> type = exception.getClass();
+        SecurityExceptionMapper mapper = resolved.get(type);
+        if (mapper == null) {
+            mapper = resolve(type);
+            resolved.put(type, mapper);
+        }
+        return mapper == NO_MAPPER ? null : mapper.map(exception);
+    }
+
+    private SecurityExceptionMapper resolve(Class<?> type) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            SecurityExceptionMapper mapper = mappers.get(current);
+            if (mapper != null) {
+                return mapper;
+            }
+        }
+        return NO_MAPPER;
+    }
+
+    /**
+     * Whether the default mappings throw shared preallocated exceptions without a stack trace
+     * instead of creating new ones. Defaults to <code>false</code>.
+     * 
+     * @param preallocatedExceptions
+     */
+    public void setPreallocatedExceptions(boolean preallocatedExceptions) {
+        this.preallocatedExceptions = preallocatedExceptions;
+    }
+
+    public boolean isPreallocatedExceptions() {
+        return preallocatedExceptions;
+    }
+
+    /**
+     * Clears the stack trace of an exception, useful for exceptions created once and shared 
+     * by mappers.
+     * 
+     * @param exception
+     * @return the exception
+     */
+    public static <T extends Throwable> T stackless(T exception) {
+        exception.setStackTrace(NO_STACK_TRACE);
+        return exception;
+    }
+}
@@ -2,6 +2,11 @@ package com.expansel.errai.springsecurity.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpSession;
 
@@ -14,11 +19,17 @@ import org.jboss.errai.security.shared.exception.UnauthenticatedException;
 import org.jboss.errai.security.shared.service.AuthenticationService;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ConcurrentReferenceHashMap;
+import org.springframework.util.ConcurrentReferenceHashMap.ReferenceType;
 
 /**
  * <p>This class provides a simple AuthenticationService implementation. It can serve as 
@@ -28,6 +39,15 @@ import org.springframework.stereotype.Component;
  * but you can use your own by subclassing and overriding the userFromAuthentication() 
  * and authoritiesToErraiRoles() methods.</p>
  * 
+ * <p>The User created for an Authentication is cached, keyed by the Authentication instance 
+ * with weak references, so getUser() only converts it again once the Authentication is 
+ * replaced, e.g. on login. Call {@link #clearUserCache()} if the conversion itself changes.</p>
+ * 
+ * <p>With a {@link RoleHierarchy} set the roles of a user are all roles reachable from its
+ * authorities. The reachable roles are computed once per distinct set of authorities and 
+ * cached until the hierarchy is set again, the application context is refreshed or 
+ * {@link #clearRoleCache()} is called.</p>
+ * 
  * <p>This is also meant as an example, as it is simple enough to create a completely new 
  * implementation.</p>
  *
@@ -39,6 +59,12 @@ import org.springframework.stereotype.Component;
 public class SpringSecurityAuthenticationService implements AuthenticationService {
     private AuthenticationManager authenticationManager;
     private HttpSession session;
+    private final Map<Authentication, User> userCache = new UserCache();
+    private boolean userCacheEnabled = true;
+    private LoginThrottle loginThrottle;
+    private volatile RoleHierarchy roleHierarchy;
+    private final Map<Set<String>, Collection<RoleImpl>> reachableRoles = new ConcurrentHashMap<Set<String>, Collection<RoleImpl>>();
+    private int maxCachedRoleSets = 1000;
     
     public SpringSecurityAuthenticationService(AuthenticationManager authenticationManager, HttpSession session) {
         super();
@@ -46,12 +72,75 @@ public class SpringSecurityAuthenticationService implements AuthenticationServic
         this.session = session;
     }
 
+    /**
+     * Whether to cache the User created for each Authentication. Defaults to <code>true</code>.
+     * 
+     * @param userCacheEnabled
+     */
+    public void setUserCacheEnabled(boolean userCacheEnabled) {
+        this.userCacheEnabled = userCacheEnabled;
+        if (!userCacheEnabled) {
+            userCache.clear();
+        }
+    }
+
+    /**
+     * Limits login attempts before they reach the AuthenticationManager, not limited by default.
+     * 
+     * @param loginThrottle
+     */
+    public void setLoginThrottle(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
+    /**
+     * Removes all cached users so they are created again by userFromAuthentication().
+     */
+    public void clearUserCache() {
+        userCache.clear();
+    }
+
+    /**
+     * Sets the hierarchy used to expand authorities to all reachable roles, by default 
+     * authorities are mapped one to one.
+     * 
+     * @param roleHierarchy
+     */
+    public void setRoleHierarchy(RoleHierarchy roleHierarchy) {
+        this.roleHierarchy = roleHierarchy;
+        clearRoleCache();
+    }
+
+    /**
+     * @param maxCachedRoleSets the number of distinct authority sets whose roles are cached, 
+     * defaults to 1000
+     */
+    public void setMaxCachedRoleSets(int maxCachedRoleSets) {
+        this.maxCachedRoleSets = maxCachedRoleSets;
+    }
+
+    /**
+     * Removes the cached reachable roles and users, e.g. after the role hierarchy changed.
+     */
+    public void clearRoleCache() {
+        reachableRoles.clear();
+        userCache.clear();
+    }
+
+    @EventListener
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        clearRoleCache();
+    }
+
     @Override
     public User login(String username, String password) {
         if (isLoggedIn()) {
             return getUser();
         }
 
+        if (loginThrottle != null) {
+            loginThrottle.checkLoginAttempt(username);
+        }
         UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(username, password);
         Authentication auth = authenticationManager.authenticate(token);
         return userFromAuthentication(auth);
@@ -79,6 +168,10 @@ public class SpringSecurityAuthenticationService implements AuthenticationServic
      * @return
      */
     protected Collection<? extends Role> authoritiesToErraiRoles(Collection<? extends GrantedAuthority> authorities) {
+        RoleHierarchy hierarchy = roleHierarchy;
+        if (hierarchy != null) {
+            return reachableErraiRoles(hierarchy, authorities);
+        }
         ArrayList<RoleImpl> erraiRoles = new ArrayList<RoleImpl>(authorities.size());
         for (GrantedAuthority grantedAuthority : authorities) {
             erraiRoles.add(new RoleImpl(grantedAuthority.getAuthority()));
@@ -86,18 +179,41 @@ public class SpringSecurityAuthenticationService implements AuthenticationServic
         return erraiRoles;
     }
 
+    private Collection<RoleImpl> reachableErraiRoles(RoleHierarchy hierarchy, Collection<? extends GrantedAuthority> authorities) {
+        Set<String> key = new HashSet<String>(authorities.size() * 2);
+        for (GrantedAuthority grantedAuthority : authorities) {
+            key.add(grantedAuthority.getAuthority());
+        }
+        Collection<RoleImpl> roles = reachableRoles.get(key);
+        if (roles == null) {
+            Collection<? extends GrantedAuthority> reachable = hierarchy.getReachableGrantedAuthorities(authorities);
+            ArrayList<RoleImpl> erraiRoles = new ArrayList<RoleImpl>(reachable.size());
+            for (GrantedAuthority grantedAuthority : reachable) {
+                erraiRoles.add(new RoleImpl(grantedAuthority.getAuthority()));
+            }
+            roles = Collections.unmodifiableList(erraiRoles);
+            if (reachableRoles.size() >= maxCachedRoleSets) {
+                reachableRoles.clear();
+            }
+            reachableRoles.put(key, roles);
+        }
+        return roles;
+    }
+
     @Override
     public boolean isLoggedIn() {
-        return SecurityContextHolder.getContext().getAuthentication() != null
-                && SecurityContextHolder.getContext().getAuthentication().isAuthenticated()
-                && !(SecurityContextHolder.getContext().getAuthentication() instanceof AnonymousAuthenticationToken);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null
+                && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken);
     }
 
     @Override
     public void logout() {
         // clear spring security authentication which effectively logs one out
-        if (SecurityContextHolder.getContext().getAuthentication() != null) {
-            SecurityContextHolder.getContext().setAuthentication(null);
+        SecurityContext context = SecurityContextHolder.getContext();
+        if (context.getAuthentication() != null) {
+            context.setAuthentication(null);
         }
         session.invalidate();
         throw new UnauthenticatedException();
@@ -105,9 +221,41 @@ public class SpringSecurityAuthenticationService implements AuthenticationServic
 
     @Override
     public User getUser() {
-        if (SecurityContextHolder.getContext().getAuthentication() != null) {
-            return userFromAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null) {
+            if (!userCacheEnabled) {
+                return userFromAuthentication(authentication);
+            }
+            User user = userCache.get(authentication);
+            if (user == null) {
+                user = userFromAuthentication(authentication);
+                userCache.put(authentication, user);
+            }
+            return user;
         }
         return User.ANONYMOUS;
     }
+
+    /**
+     * Hashes keys by identity as the Authentication hash code is computed from its 
+     * authorities on every call.
+     */
+    private static class UserCache extends ConcurrentReferenceHashMap<Authentication, User> {
+        UserCache() {
+            super(16, ReferenceType.WEAK);
+        }
+
+        @Override
+        protected int getHash(Object o) {
+            int hash = System.identityHashCode(o);
+            // spread the same way as the super class
+            hash += (hash << 15) ^ 0xffffcd7d;
+            hash ^= (hash >>> 10);
+            hash += (hash << 3);
+            hash ^= (hash >>> 6);
+            hash += (hash << 2) + (hash << 14);
+            hash ^= (hash >>> 16);
+            return hash;
+        }
+    }
 }
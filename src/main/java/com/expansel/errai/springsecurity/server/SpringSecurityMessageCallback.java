@@ -2,24 +2,36 @@ package com.expansel.errai.springsecurity.server;
 
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
-import org.jboss.errai.security.shared.exception.UnauthenticatedException;
-import org.jboss.errai.security.shared.exception.UnauthorizedException;
+import org.jboss.errai.common.client.api.Assert;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.core.AuthenticationException;
+
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
 /**
  * <p>Wraps a MessageCallback so that exceptions can be intercepted and mapped.</p>
  * 
  * <p>For example a Spring {@link AccessDeniedException} generated by a @Secured annotation
- * would be mapped to an Errai UnauthorizedException for the MessageBus.</p>
+ * would be mapped to an Errai UnauthorizedException for the MessageBus. The mappings come
+ * from a {@link SecurityExceptionMappingRegistry}.</p>
+ * 
+ * <p>It is also the {@link MessageCallbackInterceptor} the {@link SpringSecurityMessageCallbackWrapper}
+ * contributes to a fused wrapper chain, in which case there is no wrapped callback.</p>
  *
  * @author Zach Visagie
  */
-public class SpringSecurityMessageCallback implements MessageCallback {
+public class SpringSecurityMessageCallback implements MessageCallback, MessageCallbackInterceptor {
+    private static final SecurityExceptionMappingRegistry defaultRegistry = new SecurityExceptionMappingRegistry();
+
     MessageCallback messageCallback;
+    private final SecurityExceptionMappingRegistry registry;
     
     public SpringSecurityMessageCallback(MessageCallback messageCallback) {
+        this(messageCallback, defaultRegistry);
+    }
+
+    public SpringSecurityMessageCallback(MessageCallback messageCallback, SecurityExceptionMappingRegistry registry) {
         super();
         this.messageCallback = messageCallback;
+        this.registry = Assert.notNull(registry);
     }
 
     @Override
@@ -31,6 +43,18 @@ public class SpringSecurityMessageCallback implements MessageCallback {
         } 
     }
 
+    @Override
+    public Throwable onError(Message message, Throwable error, long token) {
+        if (error instanceof RuntimeException) {
+            try {
+                handleException((RuntimeException) error);
+            } catch (RuntimeException e) {
+                return e;
+            }
+        }
+        return error;
+    }
+
     protected void handleException(RuntimeException e) {
         // We handle the causes as well because RPC callbacks throw 
         // a MessageDeliveryException with an AccessDeniedException as 
@@ -51,11 +75,10 @@ public class SpringSecurityMessageCallback implements MessageCallback {
     }
 
     protected RuntimeException mapException(Throwable t) {
-        if(t instanceof AuthenticationException) {
-            return new UnauthenticatedException();
-        } else if(t instanceof AccessDeniedException) {
-            return new UnauthorizedException();
-        }
-        return null;
+        return registry.map(t);
+    }
+
+    public SecurityExceptionMappingRegistry getRegistry() {
+        return registry;
     }
 }
\ No newline at end of file
@@ -1,22 +1,61 @@
 package com.expansel.errai.springsecurity.server;
 
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.common.client.api.Assert;
 
 import com.expansel.errai.spring.server.ErraiApplicationListener;
-import com.expansel.errai.spring.server.MessageCallbackWrapper;
+import com.expansel.errai.spring.server.InterceptingMessageCallbackWrapper;
+import com.expansel.errai.spring.server.MessageCallbackInterceptor;
 
 /**
  * <p>Wraps a {@link SpringSecurityMessageCallback} so that the {@link ErraiApplicationListener}
  * can wrap MessageCallbacks in order to handle spring exception mapping.</p>
- *
+ * 
+ * <p>Additional mappings can be registered with the {@link SecurityExceptionMappingRegistry}
+ * returned by {@link #getRegistry()} or passed to the constructor.</p>
  *
  * @author Zach Visagie
  */
-public class SpringSecurityMessageCallbackWrapper implements MessageCallbackWrapper {
+public class SpringSecurityMessageCallbackWrapper implements InterceptingMessageCallbackWrapper {
+    private final SecurityExceptionMappingRegistry registry;
+
+    public SpringSecurityMessageCallbackWrapper() {
+        this(new SecurityExceptionMappingRegistry());
+    }
+
+    public SpringSecurityMessageCallbackWrapper(SecurityExceptionMappingRegistry registry) {
+        super();
+        this.registry = Assert.notNull(registry);
+    }
 
     @Override
     public MessageCallback wrap(MessageCallback messageCallback) {
-        return new SpringSecurityMessageCallback(messageCallback);
+        return createMessageCallback(messageCallback);
+    }
+
+    @Override
+    public MessageCallback wrap(MessageCallback messageCallback, String subject, String endpoint) {
+        return createMessageCallback(messageCallback);
     }
-    
+
+    @Override
+    public MessageCallbackInterceptor createInterceptor(String subject, String endpoint) {
+        return createMessageCallback(null);
+    }
+
+    /**
+     * Override to use a {@link SpringSecurityMessageCallback} subclass with different 
+     * exception mapping.
+     * 
+     * @param messageCallback the callback to wrap, null when used as an interceptor
+     * @return
+     */
+    protected SpringSecurityMessageCallback createMessageCallback(MessageCallback messageCallback) {
+        return new SpringSecurityMessageCallback(messageCallback, registry);
+    }
+
+    public SecurityExceptionMappingRegistry getRegistry() {
+        return registry;
+    }
+
 }
@@ -0,0 +1,205 @@
+package com.expansel.errai.springsecurity.server;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.jboss.errai.bus.server.servlet.CSRFTokenCheck;
+import org.jboss.errai.bus.server.util.SecureHashUtil;
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.common.client.framework.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+
+/**
+ * <p>A {@link CsrfTokenRepository} issuing HMAC signed, time bound tokens which any node 
+ * sharing the secret can verify, so the bus can run behind a round robin load balancer 
+ * without session replication.</p>
+ * 
+ * <p>Each browser gets a random nonce in an HttpOnly cookie and the token is 
+ * <code>expiry.signature(nonce, expiry)</code>. A token is only accepted together with the 
+ * cookie it was issued for, so a token obtained by another client can not be used in a 
+ * forged request. The token is sent by the Errai client in the 
+ * {@link Constants#ERRAI_CSRF_TOKEN_HEADER} header, e.g. after the challenge set by the 
+ * {@link ErraiCsrfAccessDeniedHandler} when a token is missing, invalid or expired.</p>
+ * 
+ * <p>Errai's own {@link CSRFTokenCheck} in the bus servlet checks the token against the 
+ * HttpSession. When a session already exists the issued token is copied to it, unless 
+ * turned off with {@link #setSessionCompatible(boolean)}, which also requires turning 
+ * off the servlet check. No session is ever created by this repository.</p>
+ *
+ * @author Zach Visagie
+ */
+public class StatelessCsrfTokenRepository implements CsrfTokenRepository {
+    private static final Logger logger = LoggerFactory.getLogger(StatelessCsrfTokenRepository.class);
+    private static final String NONCE_ATTRIBUTE_NAME = StatelessCsrfTokenRepository.class.getName().concat(".NONCE");
+    private static final String NONCE_CLEARED_ATTRIBUTE_NAME = StatelessCsrfTokenRepository.class.getName().concat(".NONCE_CLEARED");
+    private static final char SEPARATOR = '.';
+
+    private final HmacTokenSigner signer;
+    private long tokenValidityMillis = 12 * 60 * 60 * 1000L;
+    private String cookieName = "ERRAI-CSRF-NONCE";
+    private String cookiePath;
+    private Boolean secureCookie;
+    private boolean sessionCompatible = true;
+
+    /**
+     * @param secret at least 32 bytes of random data, shared by all nodes
+     */
+    public StatelessCsrfTokenRepository(byte[] secret) {
+        this(new HmacTokenSigner(secret));
+    }
+
+    public StatelessCsrfTokenRepository(HmacTokenSigner signer) {
+        super();
+        this.signer = Assert.notNull(signer);
+    }
+
+    @Override
+    public CsrfToken generateToken(HttpServletRequest request) {
+        String nonce = getCookieNonce(request);
+        if (nonce == null) {
+            nonce = SecureHashUtil.nextSecureHash();
+        }
+        request.setAttribute(NONCE_ATTRIBUTE_NAME, nonce);
+        long expiresAt = System.currentTimeMillis() + tokenValidityMillis;
+        String expiry = Long.toHexString(expiresAt);
+        return createToken(expiry + SEPARATOR + signer.sign(nonce + SEPARATOR + expiry));
+    }
+
+    @Override
+    public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+        if (token == null) {
+            // e.g. on login or logout, the next generated token gets a new nonce
+            request.removeAttribute(NONCE_ATTRIBUTE_NAME);
+            if (getCookieNonce(request) != null) {
+                response.addCookie(createCookie(request, "", 0));
+                request.setAttribute(NONCE_CLEARED_ATTRIBUTE_NAME, Boolean.TRUE);
+            }
+            return;
+        }
+        String nonce = (String) request.getAttribute(NONCE_ATTRIBUTE_NAME);
+        if (nonce != null && !nonce.equals(getCookieNonce(request))) {
+            response.addCookie(createCookie(request, nonce, -1));
+        }
+        if (sessionCompatible) {
+            HttpSession session = request.getSession(false);
+            if (session != null && !token.getToken().equals(session.getAttribute(CSRFTokenCheck.CSRF_TOKEN_ATTRIBUTE_NAME))) {
+                // Assign the token the way Errai expects it
+                session.setAttribute(CSRFTokenCheck.CSRF_TOKEN_ATTRIBUTE_NAME, token.getToken());
+            }
+        }
+    }
+
+    @Override
+    public CsrfToken loadToken(HttpServletRequest request) {
+        String token = request.getHeader(Constants.ERRAI_CSRF_TOKEN_HEADER);
+        if (token == null) {
+            token = request.getParameter(Constants.ERRAI_CSRF_TOKEN_VAR);
+        }
+        if (token == null) {
+            return null;
+        }
+        String nonce = getCookieNonce(request);
+        int separator = token.indexOf(SEPARATOR);
+        if (nonce == null || separator <= 0) {
+            return null;
+        }
+        String expiry = token.substring(0, separator);
+        long expiresAt;
+        try {
+            expiresAt = Long.parseLong(expiry, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            logger.debug("Expired CSRF token");
+            return null;
+        }
+        if (!signer.verify(nonce + SEPARATOR + expiry, token.substring(separator + 1))) {
+            logger.debug("Invalid CSRF token signature");
+            return null;
+        }
+        return createToken(token);
+    }
+
+    private CsrfToken createToken(String token) {
+        return new DefaultCsrfToken(Constants.ERRAI_CSRF_TOKEN_HEADER, Constants.ERRAI_CSRF_TOKEN_VAR, token);
+    }
+
+    private String getCookieNonce(HttpServletRequest request) {
+        if (request.getAttribute(NONCE_CLEARED_ATTRIBUTE_NAME) != null) {
+            return null;
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookieName.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    private Cookie createCookie(HttpServletRequest request, String value, int maxAge) {
+        Cookie cookie = new Cookie(cookieName, value);
+        String path = cookiePath;
+        if (path == null) {
+            path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        }
+        cookie.setPath(path);
+        cookie.setHttpOnly(true);
+        cookie.setSecure(secureCookie == null ? request.isSecure() : secureCookie);
+        cookie.setMaxAge(maxAge);
+        return cookie;
+    }
+
+    /**
+     * How long issued tokens are valid, defaults to 12 hours. The client is challenged for a 
+     * new token when it expires.
+     * 
+     * @param tokenValiditySeconds
+     */
+    public void setTokenValiditySeconds(int tokenValiditySeconds) {
+        if (tokenValiditySeconds <= 0) {
+            throw new IllegalArgumentException("Token validity must be positive");
+        }
+        this.tokenValidityMillis = tokenValiditySeconds * 1000L;
+    }
+
+    /**
+     * @param cookieName the name of the nonce cookie, defaults to <code>ERRAI-CSRF-NONCE</code>
+     */
+    public void setCookieName(String cookieName) {
+        this.cookieName = Assert.notNull(cookieName);
+    }
+
+    /**
+     * @param cookiePath the path of the nonce cookie, defaults to the context path
+     */
+    public void setCookiePath(String cookiePath) {
+        this.cookiePath = cookiePath;
+    }
+
+    /**
+     * @param secureCookie whether the nonce cookie is secure, defaults to whether the request is
+     */
+    public void setSecureCookie(Boolean secureCookie) {
+        this.secureCookie = secureCookie;
+    }
+
+    /**
+     * Whether to copy tokens to an existing HttpSession for Errai's {@link CSRFTokenCheck}. 
+     * Defaults to <code>true</code>.
+     * 
+     * @param sessionCompatible
+     */
+    public void setSessionCompatible(boolean sessionCompatible) {
+        this.sessionCompatible = sessionCompatible;
+    }
+}
@@ -0,0 +1,47 @@
+package com.expansel.errai.springsecurity.server;
+
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * An authenticated Spring Authentication created from a verified token by the 
+ * {@link TokenAuthenticationFilter}.
+ *
+ * @author Zach Visagie
+ */
+public class TokenAuthentication extends AbstractAuthenticationToken {
+    private static final long serialVersionUID = 1L;
+
+    private final String token;
+    private final AuthenticationTokenClaims claims;
+
+    public TokenAuthentication(String token, AuthenticationTokenClaims claims) {
+        super(AuthorityUtils.createAuthorityList(claims.getRoles().toArray(new String[claims.getRoles().size()])));
+        this.token = token;
+        this.claims = claims;
+        setAuthenticated(true);
+    }
+
+    @Override
+    public Object getCredentials() {
+        return token;
+    }
+
+    @Override
+    public Object getPrincipal() {
+        return claims.getUsername();
+    }
+
+    @Override
+    public String getName() {
+        return claims.getUsername();
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public AuthenticationTokenClaims getClaims() {
+        return claims;
+    }
+}
@@ -0,0 +1,86 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.errai.common.client.api.Assert;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>Authenticates requests carrying a token of the {@link AuthenticationTokenCodec}, either
+ * as <code>Authorization: Bearer &lt;token&gt;</code> header or in the cookie set by the 
+ * {@link TokenAuthenticationService}. The {@link TokenAuthentication} is only set for the 
+ * duration of the request, so it should be used with a stateless session creation policy:</p>
+ * 
+ * <pre>
+ * http.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+ *     .and()
+ *     .addFilterBefore(new TokenAuthenticationFilter(codec), AnonymousAuthenticationFilter.class);
+ * </pre>
+ *
+ * @author Zach Visagie
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final AuthenticationTokenCodec codec;
+    private String cookieName = TokenAuthenticationService.DEFAULT_COOKIE_NAME;
+
+    public TokenAuthenticationFilter(AuthenticationTokenCodec codec) {
+        super();
+        this.codec = Assert.notNull(codec);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication current = SecurityContextHolder.getContext().getAuthentication();
+        String token = current == null || current instanceof AnonymousAuthenticationToken ? getToken(request) : null;
+        AuthenticationTokenClaims claims = codec.verify(token);
+        if (claims == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        SecurityContext previous = SecurityContextHolder.getContext();
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(new TokenAuthentication(token, claims));
+        SecurityContextHolder.setContext(context);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+
+    protected String getToken(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            return header.substring(BEARER_PREFIX.length()).trim();
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookieName.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param cookieName the token cookie name, defaults to the one used by {@link TokenAuthenticationService}
+     */
+    public void setCookieName(String cookieName) {
+        this.cookieName = Assert.notNull(cookieName);
+    }
+}
@@ -0,0 +1,192 @@
+package com.expansel.errai.springsecurity.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jboss.errai.bus.server.annotations.Service;
+import org.jboss.errai.common.client.api.Assert;
+import org.jboss.errai.security.shared.api.Role;
+import org.jboss.errai.security.shared.api.RoleImpl;
+import org.jboss.errai.security.shared.api.identity.User;
+import org.jboss.errai.security.shared.api.identity.UserImpl;
+import org.jboss.errai.security.shared.exception.UnauthenticatedException;
+import org.jboss.errai.security.shared.service.AuthenticationService;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.expansel.errai.spring.server.cache.BoundedExpiringCache;
+
+/**
+ * <p>An AuthenticationService that keeps no session state. On login a signed token is created
+ * by the {@link AuthenticationTokenCodec}, set as an HttpOnly cookie when the servlet response
+ * is available and returned in the {@link #TOKEN_PROPERTY} property of the User. The 
+ * {@link TokenAuthenticationFilter} authenticates later requests from the token.</p>
+ * 
+ * <p>The Errai User is built from the token claims, cached per token, and can be customised
+ * by overriding userFromClaims() and rolesFromClaims(). Logging out removes the cookie but the
+ * token itself stays valid until it expires.</p>
+ *
+ * @author Zach Visagie
+ */
+@Service
+public class TokenAuthenticationService implements AuthenticationService {
+    /**
+     * The User property holding the token for clients that send it as a header.
+     */
+    public static final String TOKEN_PROPERTY = "authToken";
+    public static final String DEFAULT_COOKIE_NAME = "ERRAI-AUTH-TOKEN";
+
+    private final AuthenticationManager authenticationManager;
+    private final AuthenticationTokenCodec codec;
+    private final BoundedExpiringCache<String, User> users = new BoundedExpiringCache<String, User>(10000, 5, TimeUnit.MINUTES);
+    private String cookieName = DEFAULT_COOKIE_NAME;
+    private LoginThrottle loginThrottle;
+
+    public TokenAuthenticationService(AuthenticationManager authenticationManager, AuthenticationTokenCodec codec) {
+        super();
+        this.authenticationManager = Assert.notNull(authenticationManager);
+        this.codec = Assert.notNull(codec);
+    }
+
+    @Override
+    public User login(String username, String password) {
+        if (isLoggedIn()) {
+            return getUser();
+        }
+
+        if (loginThrottle != null) {
+            loginThrottle.checkLoginAttempt(username);
+        }
+        Authentication auth = authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
+        List<String> roles = new ArrayList<String>();
+        for (GrantedAuthority authority : auth.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        AuthenticationTokenClaims claims = new AuthenticationTokenClaims(auth.getName(), roles,
+                System.currentTimeMillis() + codec.getTokenValidityMillis());
+        String token = codec.createToken(claims);
+
+        // authenticated for the rest of this request
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(new TokenAuthentication(token, claims));
+        SecurityContextHolder.setContext(context);
+        setCookie(token, (int) (codec.getTokenValidityMillis() / 1000));
+        return getUser(token, claims);
+    }
+
+    @Override
+    public boolean isLoggedIn() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null
+                && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken);
+    }
+
+    @Override
+    public void logout() {
+        SecurityContext context = SecurityContextHolder.getContext();
+        Authentication authentication = context.getAuthentication();
+        if (authentication instanceof TokenAuthentication) {
+            String token = ((TokenAuthentication) authentication).getToken();
+            codec.evict(token);
+            users.remove(token);
+        }
+        if (authentication != null) {
+            context.setAuthentication(null);
+        }
+        setCookie("", 0);
+        throw new UnauthenticatedException();
+    }
+
+    @Override
+    public User getUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication instanceof TokenAuthentication) {
+            TokenAuthentication tokenAuthentication = (TokenAuthentication) authentication;
+            return getUser(tokenAuthentication.getToken(), tokenAuthentication.getClaims());
+        }
+        return User.ANONYMOUS;
+    }
+
+    private User getUser(String token, AuthenticationTokenClaims claims) {
+        User user = users.get(token);
+        if (user == null) {
+            user = userFromClaims(claims);
+            user.setProperty(TOKEN_PROPERTY, token);
+            users.put(token, user);
+        }
+        return user;
+    }
+
+    /**
+     * This method can be overridden if there is a need for a different errai User implementation class.
+     * 
+     * @param claims
+     * @return
+     */
+    protected User userFromClaims(AuthenticationTokenClaims claims) {
+        return new UserImpl(claims.getUsername(), rolesFromClaims(claims));
+    }
+
+    /**
+     * Override this method to provide your own Errai Role implementation.
+     * 
+     * @param claims
+     * @return
+     */
+    protected Collection<? extends Role> rolesFromClaims(AuthenticationTokenClaims claims) {
+        List<RoleImpl> erraiRoles = new ArrayList<RoleImpl>(claims.getRoles().size());
+        for (String role : claims.getRoles()) {
+            erraiRoles.add(new RoleImpl(role));
+        }
+        return erraiRoles;
+    }
+
+    private void setCookie(String token, int maxAge) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return;
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response == null || response.isCommitted()) {
+            return;
+        }
+        Cookie cookie = new Cookie(cookieName, token);
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setSecure(request.isSecure());
+        cookie.setMaxAge(maxAge);
+        response.addCookie(cookie);
+    }
+
+    /**
+     * Limits login attempts before they reach the AuthenticationManager, not limited by default.
+     * 
+     * @param loginThrottle
+     */
+    public void setLoginThrottle(LoginThrottle loginThrottle) {
+        this.loginThrottle = loginThrottle;
+    }
+
+    /**
+     * @param cookieName the token cookie name, must match the {@link TokenAuthenticationFilter}
+     */
+    public void setCookieName(String cookieName) {
+        this.cookieName = Assert.notNull(cookieName);
+    }
+}
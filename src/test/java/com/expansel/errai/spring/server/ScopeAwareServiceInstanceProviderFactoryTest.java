@@ -0,0 +1,181 @@
+package com.expansel.errai.spring.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.jboss.errai.bus.server.io.ServiceInstanceProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.aop.scope.ScopedProxyUtils;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinitionHolder;
+import org.springframework.beans.factory.support.GenericBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.SessionScope;
+
+import com.expansel.errai.spring.server.ScopeAwareServiceInstanceProviderFactory.LookupServiceInstanceProvider;
+import com.expansel.errai.spring.server.ScopeAwareServiceInstanceProviderFactory.SingletonServiceInstanceProvider;
+
+public class ScopeAwareServiceInstanceProviderFactoryTest {
+    private GenericApplicationContext context;
+    private final ScopeAwareServiceInstanceProviderFactory factory = new ScopeAwareServiceInstanceProviderFactory();
+
+    @Before
+    public void setUp() {
+        Counted.created.set(0);
+        context = new GenericApplicationContext();
+        context.getBeanFactory().registerScope(WebApplicationContext.SCOPE_SESSION, new SessionScope());
+        context.registerBeanDefinition("singleton", definition(BeanDefinition.SCOPE_SINGLETON, true));
+        context.registerBeanDefinition("prototype", definition(BeanDefinition.SCOPE_PROTOTYPE, false));
+        context.registerBeanDefinition("session", definition(WebApplicationContext.SCOPE_SESSION, false));
+        BeanDefinitionHolder proxied = ScopedProxyUtils.createScopedProxy(
+                new BeanDefinitionHolder(definition(WebApplicationContext.SCOPE_SESSION, false), "sessionProxy"), context, false);
+        context.registerBeanDefinition(proxied.getBeanName(), proxied.getBeanDefinition());
+        context.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        context.close();
+    }
+
+    private static BeanDefinition definition(String scope, boolean lazyInit) {
+        GenericBeanDefinition definition = new GenericBeanDefinition();
+        definition.setBeanClass(Counted.class);
+        definition.setScope(scope);
+        definition.setLazyInit(lazyInit);
+        return definition;
+    }
+
+    @Test
+    public void singletonIsResolvedLazilyOnceAndCached() {
+        ServiceInstanceProvider provider = factory.createProvider(context, "singleton");
+        assertTrue(provider instanceof SingletonServiceInstanceProvider);
+        assertEquals(0, Counted.created.get());
+
+        Object first = provider.get(null);
+        assertSame(first, provider.get(null));
+        assertSame(context.getBean("singleton"), first);
+        assertEquals(1, Counted.created.get());
+    }
+
+    @Test
+    public void prototypeIsCreatedForEveryCall() {
+        ServiceInstanceProvider provider = factory.createProvider(context, "prototype");
+        assertTrue(provider instanceof LookupServiceInstanceProvider);
+
+        assertNotSame(provider.get(null), provider.get(null));
+        assertEquals(2, Counted.created.get());
+    }
+
+    @Test
+    public void sessionScopedBeanIsResolvedPerSession() {
+        ServiceInstanceProvider provider = factory.createProvider(context, "session");
+        assertTrue(provider instanceof LookupServiceInstanceProvider);
+
+        HttpServletRequest first = newSessionRequest();
+        bind(first);
+        Object inFirst = provider.get(null);
+        assertSame(inFirst, provider.get(null));
+
+        bind(newSessionRequest());
+        Object inSecond = provider.get(null);
+        assertNotSame(inFirst, inSecond);
+
+        bind(first);
+        assertSame(inFirst, provider.get(null));
+    }
+
+    @Test
+    public void scopedProxyIsCachedAndRoutesPerSession() {
+        ServiceInstanceProvider provider = factory.createProvider(context, "sessionProxy");
+        assertTrue(provider instanceof SingletonServiceInstanceProvider);
+
+        Identified proxy = (Identified) provider.get(null);
+        assertSame(proxy, provider.get(null));
+
+        bind(newSessionRequest());
+        int inFirst = proxy.getId();
+        assertEquals(inFirst, proxy.getId());
+
+        bind(newSessionRequest());
+        assertTrue(inFirst != proxy.getId());
+    }
+
+    private static void bind(HttpServletRequest request) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static HttpServletRequest newSessionRequest() {
+        final HttpSession session = fake(HttpSession.class, new HashMap<String, Object>());
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] { HttpServletRequest.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getSession")) {
+                            return session;
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Creates a session backed by the attribute map, other methods return null or the id.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T fake(Class<T> type, final Map<String, Object> attributes) {
+        final String id = Integer.toHexString(System.identityHashCode(attributes));
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    attributes.put((String) args[0], args[1]);
+                } else if (name.equals("removeAttribute")) {
+                    attributes.remove(args[0]);
+                } else if (name.equals("getId")) {
+                    return id;
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                return null;
+            }
+        });
+    }
+
+    public interface Identified {
+        public int getId();
+    }
+
+    public static class Counted implements Identified {
+        static final AtomicInteger created = new AtomicInteger();
+        private final int id = created.incrementAndGet();
+
+        @Override
+        public int getId() {
+            return id;
+        }
+    }
+}
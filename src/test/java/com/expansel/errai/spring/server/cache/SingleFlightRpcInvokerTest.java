@@ -0,0 +1,193 @@
+package com.expansel.errai.spring.server.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.junit.After;
+import org.junit.Test;
+
+import com.expansel.errai.spring.server.RpcInvoker;
+
+public class SingleFlightRpcInvokerTest {
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+    private final AtomicInteger invocations = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ThreadLocal<String> currentUser = new ThreadLocal<String>();
+    private final RpcResultCacheManager manager = new RpcResultCacheManager() {
+        @Override
+        protected Object resolveUserKey(Message message) {
+            return currentUser.get();
+        }
+    };
+
+    interface Annotated {
+        @SingleFlightRpc
+        void perUser();
+
+        @SingleFlightRpc(perUser = false)
+        void shared();
+
+        @SingleFlightRpc(perUser = false, timeout = 50, unit = TimeUnit.MILLISECONDS)
+        void shortTimeout();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallsInvokeTheServiceOnce() throws Exception {
+        final SingleFlightRpcInvoker invoker = createInvoker("shared", new RpcInvoker() {
+            @Override
+            public Object invoke(Message message, Object[] args) throws Exception {
+                invocations.incrementAndGet();
+                release.await();
+                return "result of " + args[0];
+            }
+        });
+
+        List<Future<Object>> calls = call(invoker, CALLERS, null);
+        awaitWaiting(invoker, CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> call : calls) {
+            assertEquals("result of key", call.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, invocations.get());
+        assertEquals(1, invoker.getInvocations());
+        assertEquals(CALLERS - 1, invoker.getCoalesced());
+        assertEquals(0, invoker.getInFlight());
+    }
+
+    @Test
+    public void exceptionIsThrownToEveryWaitingCaller() throws Exception {
+        final InvocationTargetException failure = new InvocationTargetException(new IllegalStateException("failed"));
+        final SingleFlightRpcInvoker invoker = createInvoker("shared", new RpcInvoker() {
+            @Override
+            public Object invoke(Message message, Object[] args) throws Exception {
+                invocations.incrementAndGet();
+                release.await();
+                throw failure;
+            }
+        });
+
+        List<Future<Object>> calls = call(invoker, CALLERS, null);
+        awaitWaiting(invoker, CALLERS - 1);
+        release.countDown();
+
+        for (Future<Object> call : calls) {
+            try {
+                call.get(5, TimeUnit.SECONDS);
+                fail("Expected the failure of the running call");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+        assertEquals(1, invocations.get());
+        assertEquals(0, invoker.getInFlight());
+    }
+
+    @Test
+    public void callsOfDistinctUsersAreNotCoalesced() throws Exception {
+        final SingleFlightRpcInvoker invoker = createInvoker("perUser", new RpcInvoker() {
+            @Override
+            public Object invoke(Message message, Object[] args) throws Exception {
+                invocations.incrementAndGet();
+                release.await();
+                return currentUser.get();
+            }
+        });
+
+        List<Future<Object>> annCalls = call(invoker, CALLERS / 2, "ann");
+        List<Future<Object>> bobCalls = call(invoker, CALLERS / 2, "bob");
+        awaitWaiting(invoker, CALLERS - 2);
+        release.countDown();
+
+        for (Future<Object> call : annCalls) {
+            assertEquals("ann", call.get(5, TimeUnit.SECONDS));
+        }
+        for (Future<Object> call : bobCalls) {
+            assertEquals("bob", call.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, invocations.get());
+        assertEquals(CALLERS - 2, invoker.getCoalesced());
+    }
+
+    @Test
+    public void waitingCallInvokesTheServiceAfterTheTimeout() throws Exception {
+        final SingleFlightRpcInvoker invoker = createInvoker("shortTimeout", new RpcInvoker() {
+            @Override
+            public Object invoke(Message message, Object[] args) throws Exception {
+                if (invocations.incrementAndGet() == 1) {
+                    release.await();
+                    return "slow";
+                }
+                return "direct";
+            }
+        });
+
+        List<Future<Object>> slow = call(invoker, 1, null);
+        while (invoker.getInFlight() == 0) {
+            Thread.sleep(1);
+        }
+
+        assertEquals("direct", invoker.invoke(null, new Object[] { "key" }));
+        assertEquals(1, invoker.getTimedOut());
+        release.countDown();
+        assertEquals("slow", slow.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(2, invocations.get());
+    }
+
+    private SingleFlightRpcInvoker createInvoker(String annotatedMethod, RpcInvoker delegate) throws Exception {
+        SingleFlightRpc singleFlight = Annotated.class.getDeclaredMethod(annotatedMethod).getAnnotation(SingleFlightRpc.class);
+        return (SingleFlightRpcInvoker) manager.createSingleFlightInvoker(delegate, "Service", annotatedMethod + ":", singleFlight);
+    }
+
+    /**
+     * Starts calls with the same arguments, each on its own thread.
+     */
+    private List<Future<Object>> call(final SingleFlightRpcInvoker invoker, int count, final String user) {
+        List<Future<Object>> calls = new ArrayList<Future<Object>>();
+        for (int i = 0; i < count; i++) {
+            calls.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    currentUser.set(user);
+                    return invoker.invoke(null, new Object[] { "key" });
+                }
+            }));
+        }
+        return calls;
+    }
+
+    /**
+     * Waits until the calls not invoking the service wait for the running calls.
+     */
+    private static void awaitWaiting(SingleFlightRpcInvoker invoker, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (invoker.getCoalesced() < waiting) {
+            if (System.nanoTime() > deadline) {
+                fail("Calls did not wait for the running call");
+            }
+            Thread.sleep(1);
+        }
+    }
+}
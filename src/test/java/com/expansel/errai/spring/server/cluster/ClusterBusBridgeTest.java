@@ -0,0 +1,283 @@
+package com.expansel.errai.spring.server.cluster;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.BusMonitor;
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.api.Subscription;
+import org.jboss.errai.bus.client.api.UnsubscribeListener;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.junit.After;
+import org.junit.Test;
+
+public class ClusterBusBridgeTest {
+    private static final String SUBJECT = "Prices";
+
+    private final InJvmClusterTransport.Group group = new InJvmClusterTransport.Group();
+    private final List<ClusterBusBridge> bridges = new ArrayList<ClusterBusBridge>();
+    private final ClusterFrameCodec codec = new ClusterFrameCodec();
+
+    @After
+    public void tearDown() {
+        for (ClusterBusBridge bridge : bridges) {
+            bridge.stop();
+        }
+    }
+
+    @Test
+    public void messagesAreRelayedToTheOtherNodesInOrder() throws Exception {
+        RecordingBus bus1 = new RecordingBus();
+        RecordingBus bus2 = new RecordingBus();
+        RecordingBus bus3 = new RecordingBus();
+        ClusterBusBridge bridge1 = start(bus1);
+        ClusterBusBridge bridge2 = start(bus2);
+        ClusterBusBridge bridge3 = start(bus3);
+
+        for (int i = 0; i < 100; i++) {
+            bus1.sendGlobal(message(SUBJECT, "price" + i));
+        }
+        bus1.sendGlobal(message("Other", "not relayed"));
+
+        awaitDelivered(bus2, 100);
+        awaitDelivered(bus3, 100);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("price" + i, bus2.delivered.get(i));
+            assertEquals("price" + i, bus3.delivered.get(i));
+        }
+        assertEquals(100, bridge1.getRelayedCount());
+        assertEquals(100, bridge2.getReceivedCount());
+        assertEquals(100, bridge3.getReceivedCount());
+    }
+
+    @Test
+    public void messagesFromPeersAreNotRelayedBack() throws Exception {
+        RecordingBus bus1 = new RecordingBus();
+        RecordingBus bus2 = new RecordingBus();
+        ClusterBusBridge bridge1 = start(bus1);
+        ClusterBusBridge bridge2 = start(bus2);
+
+        bus1.sendGlobal(message(SUBJECT, "price"));
+        awaitDelivered(bus2, 1);
+        // give a relay back time to arrive
+        Thread.sleep(100);
+
+        assertEquals(0, bridge2.getRelayedCount());
+        assertEquals(0, bridge2.getFramesSentCount());
+        assertEquals(0, bridge1.getReceivedCount());
+        assertEquals(Arrays.asList("price"), bus1.delivered);
+    }
+
+    @Test
+    public void duplicateAndTooOldSequenceNumbersAreDropped() throws Exception {
+        RecordingBus bus = new RecordingBus();
+        ClusterBusBridge bridge = new ValueBridge(new InJvmClusterTransport(group));
+        bridge.setDeduplicationWindow(64, 60000);
+        bridges.add(bridge);
+        bridge.start(bus);
+        long origin = 42;
+
+        bridge.onFrame(frame(origin, 1, 2, 3));
+        bridge.onFrame(frame(origin, 2, 3));
+        assertEquals(3, bridge.getReceivedCount());
+        assertEquals(2, bridge.getDuplicateCount());
+
+        // out of order within the window is delivered, below the window is dropped
+        bridge.onFrame(frame(origin, 200, 150, 100, 150));
+        assertEquals(Arrays.asList("1", "2", "3", "200", "150"), bus.delivered);
+        assertEquals(4, bridge.getDuplicateCount());
+
+        // other origins have their own window, the node's own messages are always dropped
+        bridge.onFrame(frame(7, 1));
+        bridge.onFrame(frame(bridge.getNodeId(), 1000));
+        assertEquals(Arrays.asList("1", "2", "3", "200", "150", "1"), bus.delivered);
+        assertEquals(5, bridge.getDuplicateCount());
+    }
+
+    @Test
+    public void framesRoundTripThroughTheCodec() throws Exception {
+        List<ClusterMessage> messages = Arrays.asList(
+                new ClusterMessage(-5, 1, SUBJECT, new byte[] { 1, 2, 3 }),
+                new ClusterMessage(-5, Long.MAX_VALUE, "Other", new byte[0]));
+
+        List<ClusterMessage> decoded = codec.decode(codec.encode(-5, messages));
+
+        assertEquals(messages.size(), decoded.size());
+        for (int i = 0; i < messages.size(); i++) {
+            assertEquals(messages.get(i).getOrigin(), decoded.get(i).getOrigin());
+            assertEquals(messages.get(i).getSequence(), decoded.get(i).getSequence());
+            assertEquals(messages.get(i).getSubject(), decoded.get(i).getSubject());
+            assertArrayEquals(messages.get(i).getPayload(), decoded.get(i).getPayload());
+        }
+        try {
+            codec.decode(new byte[] { 1, 2, 3, 4, 5 });
+            fail("Expected an invalid frame to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private ClusterBusBridge start(MessageBus bus) throws IOException {
+        ClusterBusBridge bridge = new ValueBridge(new InJvmClusterTransport(group));
+        bridge.setMaxBatchDelayMillis(1);
+        bridges.add(bridge);
+        bridge.start(bus);
+        return bridge;
+    }
+
+    /**
+     * A frame of messages whose value is their sequence number.
+     */
+    private byte[] frame(long origin, long... sequences) throws IOException {
+        List<ClusterMessage> messages = new ArrayList<ClusterMessage>();
+        for (long sequence : sequences) {
+            byte[] payload = String.valueOf(sequence).getBytes(StandardCharsets.UTF_8);
+            messages.add(new ClusterMessage(origin, sequence, SUBJECT, payload));
+        }
+        return codec.encode(origin, messages);
+    }
+
+    private static Message message(String subject, String value) {
+        Map<String, Object> parts = new HashMap<String, Object>();
+        parts.put(MessageParts.ToSubject.name(), subject);
+        parts.put(MessageParts.Value.name(), value);
+        return CommandMessage.createWithParts(parts);
+    }
+
+    private static void awaitDelivered(RecordingBus bus, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bus.delivered.size() < count) {
+            if (System.nanoTime() > deadline) {
+                fail("Only " + bus.delivered.size() + " of " + count + " messages were delivered");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Relays only the value of messages, as the Errai protocol needs the marshalling of a
+     * running Errai service.
+     */
+    private static class ValueBridge extends ClusterBusBridge {
+        ValueBridge(ClusterTransport transport) {
+            super(transport, Arrays.asList(SUBJECT));
+        }
+
+        @Override
+        protected byte[] encodePayload(Message message) {
+            return message.get(String.class, MessageParts.Value).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected Message createMessage(ClusterMessage clusterMessage) {
+            return message(clusterMessage.getSubject(), new String(clusterMessage.getPayload(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Delivers messages to local subscribers on the sending thread and records the values
+     * sent on the relayed subject.
+     */
+    private static class RecordingBus implements MessageBus {
+        final List<String> delivered = new CopyOnWriteArrayList<String>();
+        private final Map<String, List<MessageCallback>> subscribers = new HashMap<String, List<MessageCallback>>();
+
+        RecordingBus() {
+            subscribeLocal(SUBJECT, new MessageCallback() {
+                @Override
+                public void callback(Message message) {
+                    delivered.add(message.get(String.class, MessageParts.Value));
+                }
+            });
+        }
+
+        @Override
+        public void sendGlobal(Message message) {
+            List<MessageCallback> callbacks;
+            synchronized (subscribers) {
+                callbacks = subscribers.get(message.getSubject());
+                callbacks = callbacks == null ? Collections.<MessageCallback> emptyList() : new ArrayList<MessageCallback>(callbacks);
+            }
+            for (MessageCallback callback : callbacks) {
+                callback.callback(message);
+            }
+        }
+
+        @Override
+        public void send(Message message) {
+            sendGlobal(message);
+        }
+
+        @Override
+        public void send(Message message, boolean fireListeners) {
+            sendGlobal(message);
+        }
+
+        @Override
+        public Subscription subscribe(String subject, MessageCallback callback) {
+            return subscribeLocal(subject, callback);
+        }
+
+        @Override
+        public Subscription subscribeLocal(final String subject, final MessageCallback callback) {
+            synchronized (subscribers) {
+                List<MessageCallback> callbacks = subscribers.get(subject);
+                if (callbacks == null) {
+                    callbacks = new ArrayList<MessageCallback>();
+                    subscribers.put(subject, callbacks);
+                }
+                callbacks.add(callback);
+            }
+            return new Subscription() {
+                @Override
+                public void remove() {
+                    synchronized (subscribers) {
+                        subscribers.get(subject).remove(callback);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void unsubscribeAll(String subject) {
+            synchronized (subscribers) {
+                subscribers.remove(subject);
+            }
+        }
+
+        @Override
+        public boolean isSubscribed(String subject) {
+            synchronized (subscribers) {
+                return subscribers.containsKey(subject);
+            }
+        }
+
+        @Override
+        public void addSubscribeListener(SubscribeListener listener) {
+        }
+
+        @Override
+        public void addUnsubscribeListener(UnsubscribeListener listener) {
+        }
+
+        @Override
+        public void attachMonitor(BusMonitor monitor) {
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.expansel.errai.spring.server.publish;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.RequestDispatcher;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.Resources;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingPublisherTest {
+    private static final String SUBJECT = "Prices";
+    private static final QueueSession SESSION = IntrabusQueueSession.INSTANCE;
+
+    private final List<Message> dispatched = new CopyOnWriteArrayList<Message>();
+    private final List<Message> dispatchedGlobal = new CopyOnWriteArrayList<Message>();
+    private final Map<String, QueueSession> sessions = new HashMap<String, QueueSession>();
+    private CoalescingPublisher publisher;
+
+    @Before
+    public void setUp() {
+        sessions.put("queue-1", SESSION);
+        // windows long enough to only send on an explicit flush
+        publisher = new CoalescingPublisher(new RequestDispatcher() {
+            @Override
+            public void dispatchGlobal(Message message) {
+                dispatchedGlobal.add(message);
+            }
+
+            @Override
+            public void dispatch(Message message) {
+                dispatched.add(message);
+            }
+        }, 1, TimeUnit.HOURS);
+        publisher.setServerMessageBus(serverMessageBus());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        publisher.destroy();
+    }
+
+    @Test
+    public void valuesForAQueueAreSentToItsSession() {
+        publisher.publish(SUBJECT, "queue-1", "a");
+        publisher.publish(SUBJECT, "queue-1", "b");
+        publisher.flush();
+
+        assertEquals(1, dispatched.size());
+        assertEquals(0, dispatchedGlobal.size());
+        Message message = dispatched.get(0);
+        assertSame(SESSION, message.getResource(QueueSession.class, Resources.Session.name()));
+        assertEquals(SUBJECT, message.getSubject());
+        assertEquals(Arrays.asList("a", "b"), message.get(List.class, MessageParts.Value));
+        assertEquals(1, publisher.getSentCount());
+    }
+
+    @Test
+    public void conflatedValuesForAQueueAreSentToItsSession() {
+        publisher.conflate(SUBJECT, "queue-1", "EURUSD", 1.10);
+        publisher.conflate(SUBJECT, "queue-1", "GBPUSD", 1.25);
+        publisher.conflate(SUBJECT, "queue-1", "EURUSD", 1.11);
+        publisher.flush();
+
+        assertEquals(1, dispatched.size());
+        Message message = dispatched.get(0);
+        assertSame(SESSION, message.getResource(QueueSession.class, Resources.Session.name()));
+        assertEquals(Arrays.asList(1.11, 1.25), message.get(List.class, MessageParts.Value));
+    }
+
+    @Test
+    public void valuesForAQueueThatIsGoneAreDropped() {
+        publisher.publish(SUBJECT, "queue-1", "a");
+        publisher.publish(SUBJECT, "expired", "b");
+        publisher.flush();
+
+        assertEquals(1, dispatched.size());
+        assertTrue(dispatched.get(0).hasResource(Resources.Session.name()));
+        assertEquals(1, publisher.getSentCount());
+        assertEquals(1, publisher.getDroppedCount());
+        assertEquals(0, publisher.getFailedCount());
+    }
+
+    @Test
+    public void valuesForAllClientsAreSentGlobally() {
+        publisher.publish(SUBJECT, "a");
+        publisher.flush();
+
+        assertEquals(0, dispatched.size());
+        assertEquals(1, dispatchedGlobal.size());
+        assertEquals(Arrays.asList("a"), dispatchedGlobal.get(0).get(List.class, MessageParts.Value));
+    }
+
+    /**
+     * A bus only looking up the sessions of client queues.
+     */
+    private ServerMessageBus serverMessageBus() {
+        return (ServerMessageBus) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ServerMessageBus.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("getSessionBySessionId")) {
+                            return sessions.get(args[0]);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
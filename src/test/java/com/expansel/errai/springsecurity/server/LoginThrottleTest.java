@@ -0,0 +1,175 @@
+package com.expansel.errai.springsecurity.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LoginThrottleTest {
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 2000;
+    // slow enough that no token is refilled while the test runs
+    private static final double SLOW_RATE = 0.0001;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentAttemptsForOneUsernameNeverExceedTheBurst() throws Exception {
+        final LoginThrottle throttle = new LoginThrottle(4096);
+        throttle.setUsernameLimit(10, SLOW_RATE);
+
+        int allowed = hammer(new Attempt() {
+            @Override
+            public boolean tryAcquire(int thread, int attempt) {
+                return throttle.tryAcquire("admin", "10.0.0." + thread);
+            }
+        });
+
+        assertEquals(10, allowed);
+        assertEquals(THREADS * ATTEMPTS_PER_THREAD - 10, throttle.getRejectedCount());
+    }
+
+    @Test
+    public void concurrentAttemptsFromOneAddressNeverExceedTheAddressBurst() throws Exception {
+        final LoginThrottle throttle = new LoginThrottle(4096);
+        throttle.setAddressLimit(25, SLOW_RATE);
+
+        int allowed = hammer(new Attempt() {
+            @Override
+            public boolean tryAcquire(int thread, int attempt) {
+                return throttle.tryAcquire("user" + thread + "-" + attempt, "10.0.0.1");
+            }
+        });
+
+        assertEquals(25, allowed);
+    }
+
+    @Test
+    public void usernamesHaveTheirOwnBuckets() throws Exception {
+        final LoginThrottle throttle = new LoginThrottle(4096);
+        throttle.setUsernameLimit(3, SLOW_RATE);
+
+        // each thread uses its own username, all from the same address
+        int allowed = hammer(new Attempt() {
+            @Override
+            public boolean tryAcquire(int thread, int attempt) {
+                return throttle.tryAcquire("user" + thread, "10.0.0.1");
+            }
+        });
+
+        assertEquals(THREADS * 3, allowed);
+    }
+
+    @Test
+    public void addressIsNotLimitedByDefault() {
+        LoginThrottle throttle = new LoginThrottle(4096);
+        throttle.setUsernameLimit(1000, SLOW_RATE);
+        assertFalse(throttle.isAddressLimited());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(throttle.tryAcquire("user", "10.0.0.1"));
+        }
+        throttle.setAddressLimit(1, SLOW_RATE);
+        assertTrue(throttle.isAddressLimited());
+        assertTrue(throttle.tryAcquire("other", "10.0.0.1"));
+        assertFalse(throttle.tryAcquire("another", "10.0.0.1"));
+    }
+
+    @Test
+    public void hashCodeCollisionsDoNotResetAThrottledUsername() {
+        LoginThrottle throttle = new LoginThrottle(4096);
+        throttle.setUsernameLimit(3, SLOW_RATE);
+        assertEquals("admin".hashCode(), "admjO".hashCode());
+        assertEquals("admin".hashCode(), "admk0".hashCode());
+
+        exhaust(throttle, "admin");
+        exhaust(throttle, "admjO");
+        exhaust(throttle, "admk0");
+
+        assertFalse(throttle.tryAcquire("admin", "10.0.0.1"));
+    }
+
+    @Test
+    public void newUsernamesNeverEvictAThrottledUsername() {
+        // four slots, so every new username lands on a taken slot
+        LoginThrottle throttle = new LoginThrottle(4);
+        throttle.setUsernameLimit(3, SLOW_RATE);
+        exhaust(throttle, "admin");
+
+        int allowed = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (throttle.tryAcquire("user" + i, "10.0.0.1")) {
+                allowed++;
+            }
+            assertFalse(throttle.tryAcquire("admin", "10.0.0.1"));
+        }
+        // the new usernames can only take the three free slots, as no bucket refills
+        assertTrue(allowed <= 3);
+    }
+
+    @Test
+    public void fullBucketsAreReplacedByNewUsernames() throws InterruptedException {
+        LoginThrottle throttle = new LoginThrottle(4);
+        // refills within a microsecond, so every bucket is full by the next attempt
+        throttle.setUsernameLimit(1, 1e6);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(throttle.tryAcquire("user" + i, "10.0.0.1"));
+            Thread.sleep(1);
+        }
+    }
+
+    private static void exhaust(LoginThrottle throttle, String username) {
+        while (throttle.tryAcquire(username, "10.0.0.1")) {
+        }
+    }
+
+    /**
+     * Runs the attempts on all threads at once.
+     *
+     * @return the number of allowed attempts
+     */
+    private int hammer(final Attempt attempt) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger allowed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        if (attempt.tryAcquire(thread, i)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return allowed.get();
+    }
+
+    private interface Attempt {
+        boolean tryAcquire(int thread, int attempt);
+    }
+}